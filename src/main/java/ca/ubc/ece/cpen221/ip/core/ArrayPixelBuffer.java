@@ -0,0 +1,112 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * A {@link PixelBuffer} that keeps its pixels on the heap, in a packed, row-major
+ * {@code int} array using the {@link BufferedImage#TYPE_INT_RGB} layout.
+ */
+final class ArrayPixelBuffer extends PixelBuffer {
+    private static final int RED_MASK = 0xFF0000;
+    private static final int GREEN_MASK = 0xFF00;
+    private static final int BLUE_MASK = 0xFF;
+
+    private int[] data;
+
+    /*
+        Abstraction Function:
+            Pixel (x, y) has color data[y * width + x].
+
+        Representation Invariant:
+            data.length == width * height
+            every element of data is opaque
+     */
+
+    /**
+     * Create a buffer that owns {@code data}.
+     *
+     * @param width  is positive
+     * @param height is positive
+     * @param data   is not null, has {@code width * height} opaque pixels in row-major order
+     */
+    ArrayPixelBuffer(int width, int height, int[] data) {
+        super(width, height);
+        this.data = data;
+    }
+
+    /**
+     * Create a black buffer.
+     *
+     * @param width  is positive
+     * @param height is positive
+     */
+    ArrayPixelBuffer(int width, int height) {
+        this(width, height, new int[width * height]);
+        Arrays.fill(data, Image.OPAQUE);
+    }
+
+    @Override
+    int get(int x, int y) {
+        return data[y * width + x];
+    }
+
+    @Override
+    void set(int x, int y, int rgb) {
+        beforeWrite();
+        data[y * width + x] = rgb;
+    }
+
+    @Override
+    void getRow(int x, int y, int w, int[] dst, int offset) {
+        System.arraycopy(data, y * width + x, dst, offset, w);
+    }
+
+    @Override
+    void setRow(int x, int y, int w, int[] src, int offset) {
+        beforeWrite();
+        int start = y * width + x;
+        for (int i = 0; i < w; i++) {
+            data[start + i] = src[offset + i] | Image.OPAQUE;
+        }
+    }
+
+    @Override
+    boolean rowEquals(int x, int y, int w, int[] row, int offset) {
+        int start = y * width + x;
+        return Arrays.equals(data, start, start + w, row, offset, offset + w);
+    }
+
+    @Override
+    PixelBuffer create(int width, int height) {
+        return new ArrayPixelBuffer(width, height);
+    }
+
+    @Override
+    PixelBuffer shareStorage() {
+        return new ArrayPixelBuffer(width, height, data);
+    }
+
+    @Override
+    void duplicateStorage() {
+        data = data.clone();
+    }
+
+    @Override
+    BufferedImage toBufferedImage(int x, int y, int w, int h, boolean live) {
+        if (live) {
+            pin();
+        }
+        // wrap the array itself: the raster masks ignore the alpha bits
+        DirectColorModel colorModel = new DirectColorModel(24, RED_MASK, GREEN_MASK, BLUE_MASK);
+        int start = y * width + x;
+        WritableRaster raster = Raster.createPackedRaster(
+            new DataBufferInt(data, data.length - start, start), w, h, width,
+            new int[]{RED_MASK, GREEN_MASK, BLUE_MASK}, null);
+        return new BufferedImage(colorModel, raster, false, null);
+    }
+}
@@ -0,0 +1,126 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+/**
+ * This datatype represents <strong>immutable</strong> options for decoding an
+ * image file into an {@link Image}. The options let a caller decode only a
+ * region of the file, skip pixels while decoding (subsampling), or decode
+ * straight to a given size, so that previews, thumbnails and crops decode and
+ * allocate only a fraction of the pixels of the file.
+ * <p>
+ * Options are built up from {@link #FULL}, for example
+ * <blockquote><pre>
+ *  DecodeOptions.FULL.withRegion(new Rectangle(0, 0, 99, 99)).withSubsampling(2)
+ * </pre></blockquote>
+ * decodes every second pixel of every second row of the top-left 100-by-100 pixels.
+ */
+public final class DecodeOptions {
+
+    /**
+     * Decode the whole file at full resolution.
+     */
+    public static final DecodeOptions FULL = new DecodeOptions(null, 1, 0, 0);
+
+    private final Rectangle region;
+    private final int subsampling;
+    private final int targetWidth, targetHeight;
+
+    /*
+        Abstraction Function:
+            Decode the pixels of the file inside region (the whole file if region is null),
+            keeping one pixel in subsampling along each axis. If targetWidth > 0, the
+            subsampling is instead chosen to keep at least targetWidth-by-targetHeight
+            pixels, and the result is resampled to exactly that size.
+
+        Representation Invariant:
+            subsampling >= 1
+            targetWidth == 0 && targetHeight == 0 || targetWidth > 0 && targetHeight > 0
+     */
+
+    private DecodeOptions(Rectangle region, int subsampling, int targetWidth, int targetHeight) {
+        this.region = region;
+        this.subsampling = subsampling;
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    /**
+     * Obtain options that decode only the pixels inside {@code region}.
+     * The x coordinates of the rectangle are columns, the y coordinates are rows,
+     * and both corners are part of the region.
+     *
+     * @param region the region of the file to decode, is not null
+     * @return these options, restricted to {@code region}
+     */
+    public DecodeOptions withRegion(Rectangle region) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
+        }
+        return new DecodeOptions(region, subsampling, targetWidth, targetHeight);
+    }
+
+    /**
+     * Obtain options that keep only one pixel in {@code factor} along each row
+     * and one row in {@code factor}, starting with the top-left pixel.
+     *
+     * @param factor the subsampling factor, is positive
+     * @return these options, with subsampling {@code factor}
+     */
+    public DecodeOptions withSubsampling(int factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("subsampling factor must be positive");
+        }
+        return new DecodeOptions(region, factor, targetWidth, targetHeight);
+    }
+
+    /**
+     * Obtain options that decode to an image of exactly {@code width}-by-{@code height}
+     * pixels. The file is decoded with the largest subsampling that still keeps at least
+     * that many pixels, and each pixel of the result is then the average of the decoded
+     * pixels it covers. This replaces any subsampling set with {@link #withSubsampling(int)}.
+     *
+     * @param width  the width of the decoded image, is positive
+     * @param height the height of the decoded image, is positive
+     * @return these options, decoding to the given size
+     */
+    public DecodeOptions withTargetSize(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("target size must be positive");
+        }
+        return new DecodeOptions(region, subsampling, width, height);
+    }
+
+    /**
+     * Obtain the region to decode.
+     *
+     * @return the region to decode, or {@code null} for the whole file
+     */
+    Rectangle region() {
+        return region;
+    }
+
+    /**
+     * Obtain the subsampling factor for a region of the given size.
+     *
+     * @param regionWidth  the width of the region to decode
+     * @param regionHeight the height of the region to decode
+     * @return the subsampling factor
+     */
+    int subsampling(int regionWidth, int regionHeight) {
+        if (!hasTargetSize()) {
+            return subsampling;
+        }
+        return Math.max(1, Math.min(regionWidth / targetWidth, regionHeight / targetHeight));
+    }
+
+    boolean hasTargetSize() {
+        return targetWidth > 0;
+    }
+
+    int targetWidth() {
+        return targetWidth;
+    }
+
+    int targetHeight() {
+        return targetHeight;
+    }
+}
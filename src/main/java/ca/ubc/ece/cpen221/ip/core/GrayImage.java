@@ -0,0 +1,182 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.util.Arrays;
+
+/**
+ * This datatype represents a mutable 8-bit grayscale image: one {@code byte}
+ * per pixel, in row-major order with the origin in the top-left corner.
+ * A {@code GrayImage} takes a quarter of the memory of an {@link Image}
+ * with the same dimensions, and is the natural input for operations that
+ * only look at the intensity of the pixels.
+ * <p>
+ * The pixels are returned by {@link #pixels()} without copying. The intensity
+ * of the pixel in column {@code col} and row {@code row} is
+ * {@code pixels()[row * width() + col] & 0xFF}.
+ */
+public final class GrayImage {
+    private final int width, height;
+    private final byte[] pixels;
+
+    /*
+        Abstraction Function:
+            Represents a width-by-height grayscale image in which the pixel in
+            column col and row row has the intensity given by the unsigned value
+            of pixels[row * width + col], from 0 (black) to 255 (white).
+
+        Representation Invariant:
+            width >= 1
+            height >= 1
+            pixels.length == width * height
+     */
+
+    /**
+     * Creates a {@code width}-by-{@code height} image where each pixel is black.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @throws IllegalArgumentException if {@code width} is negative or zero
+     * @throws IllegalArgumentException if {@code height} is negative or zero
+     */
+    public GrayImage(int width, int height) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive");
+        }
+        if (height <= 0) {
+            throw new IllegalArgumentException("height must be positive");
+        }
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("image is too large for grayscale storage");
+        }
+        this.width = width;
+        this.height = height;
+        pixels = new byte[width * height];
+    }
+
+    /**
+     * Creates a grayscale version of {@code image}, converting each pixel
+     * as {@link Image#toGray(int)} does.
+     *
+     * @param image the image to convert, is not null
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     */
+    public GrayImage(Image image) {
+        this(validateImage(image).width(), image.height());
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRow(y, row, 0);
+            int start = y * width;
+            for (int x = 0; x < width; x++) {
+                pixels[start + x] = (byte) Image.toGray(row[x]);
+            }
+        }
+    }
+
+    private static Image validateImage(Image image) {
+        if (image == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        return image;
+    }
+
+    /**
+     * Obtain an {@link Image} in which every pixel is the gray of the
+     * same intensity as the corresponding pixel of this image.
+     *
+     * @return a new image with the same pixels as this one
+     */
+    public Image toImage() {
+        Image image = new Image(width, height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            int start = y * width;
+            for (int x = 0; x < width; x++) {
+                int intensity = pixels[start + x] & 0xFF;
+                row[x] = intensity << 16 | intensity << 8 | intensity;
+            }
+            image.setRow(y, row, 0);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width of the image (in pixels)
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height of the image (in pixels)
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Obtain the pixels of this image. The array is not a copy:
+     * changes to it change this image.
+     *
+     * @return the intensities of the pixels, in row-major order
+     */
+    public byte[] pixels() {
+        return pixels;
+    }
+
+    /**
+     * Returns the intensity of pixel ({@code col}, {@code row}).
+     *
+     * @param col the column index
+     * @param row the row index
+     * @return the intensity of pixel ({@code col}, {@code row}), between 0 and 255
+     * @throws IllegalArgumentException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     */
+    public int get(int col, int row) {
+        return pixels[index(col, row)] & 0xFF;
+    }
+
+    /**
+     * Sets the intensity of pixel ({@code col}, {@code row}).
+     *
+     * @param col       the column index
+     * @param row       the row index
+     * @param intensity the intensity, between 0 and 255
+     * @throws IllegalArgumentException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     * @throws IllegalArgumentException unless {@code 0 <= intensity <= 255}
+     */
+    public void set(int col, int row, int intensity) {
+        int i = index(col, row);
+        if (intensity < 0 || intensity > 255) {
+            throw new IllegalArgumentException("intensity must be between 0 and 255: " + intensity);
+        }
+        pixels[i] = (byte) intensity;
+    }
+
+    private int index(int col, int row) {
+        if (col < 0 || col >= width) {
+            throw new IllegalArgumentException("column index must be between 0 and " + (width - 1) + ": " + col);
+        }
+        if (row < 0 || row >= height) {
+            throw new IllegalArgumentException("row index must be between 0 and " + (height - 1) + ": " + row);
+        }
+        return row * width + col;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof GrayImage)) {
+            return false;
+        }
+        GrayImage that = (GrayImage) other;
+        return width == that.width && height == that.height
+            && Arrays.equals(pixels, that.pixels);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * width + height) + Arrays.hashCode(pixels);
+    }
+}
@@ -4,7 +4,7 @@ package ca.ubc.ece.cpen221.ip.core;
  *  Data type for manipulating individual pixels of an image. The original
  *  image can be read from a file in JPG, GIF, or PNG format, or the
  *  user can create a blank image of a given dimension. Includes methods for
- *  displaying the image in a window on the screen or saving to a file.
+ *  saving the image to a file; ImageViewer displays it on the screen.
  *
  *  Remarks
  *  -------
@@ -13,24 +13,17 @@ package ca.ubc.ece.cpen221.ip.core;
  ******************************************************************************/
 
 import javax.imageio.ImageIO;
-import javax.swing.ImageIcon;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JMenu;
-import javax.swing.JMenuBar;
-import javax.swing.JMenuItem;
-import javax.swing.JPanel;
-import javax.swing.KeyStroke;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.Color;
-import java.awt.FileDialog;
-import java.awt.Toolkit;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.util.Iterator;
 
 
 /**
@@ -39,8 +32,9 @@ import java.net.URL;
  * is not currently supported.
  * The original image can be read from a {@code PNG}, {@code GIF},
  * or {@code JPEG} file or the user can create a blank image of a given dimension.
- * This class includes methods for displaying the image in a window on
- * the screen or saving it to a file.
+ * This class includes methods for saving the image to a file. It does not
+ * depend on Swing, so it can be used in headless programs: images are
+ * displayed on the screen with an {@link ImageViewer}.
  * <p>
  * Pixel (<em>col</em>, <em>row</em>) is column <em>col</em> and row <em>row</em>.
  * By default, the origin (0, 0) is the pixel in the top-left corner,
@@ -68,15 +62,41 @@ import java.net.URL;
  * <p>
  * A <em>W</em>-by-<em>H</em> image uses ~ 4 <em>W H</em> bytes of memory,
  * since the color of each pixel is encoded as a 32-bit <code>int</code>.
+ * The pixels are kept in a packed, row-major {@code int} array using the
+ * {@link BufferedImage#TYPE_INT_RGB} layout; a {@code BufferedImage} is only
+ * wrapped around that array when the image is displayed or saved.
+ * <p>
+ * The method {@link #view(Rectangle)} returns a live window onto a region of
+ * an image. A view shares the pixels of the image it was taken from, so it
+ * costs no pixel copy, and changes made through either are visible in both.
+ * <p>
+ * Images that do not fit in memory can be created with {@link #mapped(int, int)}
+ * or {@link #mapped(int, int, File)}: their pixels are kept in tiles of a
+ * memory-mapped file, and only a bounded number of tiles is mapped at a time.
+ * All other operations work the same way on these images.
+ * <p>
+ * Every image has a 64-bit {@linkplain #digest() digest} of its pixels, which is
+ * computed when first needed and recomputed only after the image has changed.
+ * {@link #equals(Object)} uses it to tell different images apart quickly and
+ * {@link #hashCode()} is derived from it, so images can be used as keys in
+ * hash-based collections as long as they are not changed while they are keys.
  * <p>
  */
 
-public final class Image implements ActionListener {
+public final class Image {
+    static final int OPAQUE = 0xFF000000;      // alpha bits of every stored pixel
+    private static final long DIGEST_SEED = 0x9E3779B97F4A7C15L;
+    private static final long DIGEST_PRIME = 0xC2B2AE3D27D4EB4FL;
+    private static final long DIGEST_MIX = 0xFF51AFD7ED558CCDL;
+
     private final int width, height;           // width and height
-    private BufferedImage image;               // the rasterized image
-    private JFrame frame;                      // on-screen view
+    private final PixelBuffer buffer;          // the stored pixels
+    private final int left, top;               // position of the first pixel in the buffer
     private String filename;                   // name of file
     private boolean isOriginUpperLeft = true;  // location of origin
+    private boolean hasDigest;                 // is digest up to date?
+    private long digest;                       // digest of the pixels
+    private long digestModCount;               // modCount of the buffer when digest was computed
 
     /**
      * Creates a {@code width}-by-{@code height} image, with {@code width} columns
@@ -88,20 +108,43 @@ public final class Image implements ActionListener {
      * @throws IllegalArgumentException if {@code height} is negative or zero
      */
     public Image(int width, int height) {
-        if (width <= 0) {
-            throw new IllegalArgumentException("width must be positive");
-        }
-        if (height <= 0) {
-            throw new IllegalArgumentException("height must be positive");
-        }
+        validateDimensions(width, height);
         this.width = width;
         this.height = height;
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        // set to TYPE_INT_ARGB here and in next constructor to support transparency
+        buffer = new ArrayPixelBuffer(width, height);
+        left = 0;
+        top = 0;
+    }
+
+    /**
+     * Creates an image that covers all of {@code buffer}.
+     */
+    private Image(PixelBuffer buffer) {
+        this.width = buffer.width;
+        this.height = buffer.height;
+        this.buffer = buffer;
+        left = 0;
+        top = 0;
+    }
+
+    /**
+     * Creates a view of a region of {@code parent} that shares its pixels.
+     * The region is given in the storage rows of {@code parent}, independent of its origin.
+     */
+    private Image(Image parent, int col, int storageRow, int width, int height) {
+        this.width = width;
+        this.height = height;
+        buffer = parent.buffer;
+        left = parent.left + col;
+        top = parent.top + storageRow;
+        isOriginUpperLeft = parent.isOriginUpperLeft;
     }
 
     /**
      * Creates a new image that is a deep copy of the argument image.
+     * The copy initially shares its pixels with {@code image} and only duplicates
+     * them when either image is changed, so copying an image that is never
+     * changed afterwards costs no pixel copy.
      *
      * @param image the image to copy
      * @throws IllegalArgumentException if {@code image} is {@code null}
@@ -113,13 +156,25 @@ public final class Image implements ActionListener {
 
         width = image.width();
         height = image.height();
-        this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        if (width == image.buffer.width && height == image.buffer.height) {
+            buffer = image.buffer.copy();
+        } else {
+            // a view: copy just its region rather than sharing the whole parent
+            buffer = image.buffer.create(width, height);
+            int[] pixels = new int[width];
+            for (int row = 0; row < height; row++) {
+                image.buffer.getRow(image.left, image.top + row, width, pixels, 0);
+                buffer.setRow(0, row, width, pixels, 0);
+            }
+        }
+        left = 0;
+        top = 0;
         filename = image.filename;
         isOriginUpperLeft = image.isOriginUpperLeft;
-        for (int col = 0; col < width(); col++) {
-            for (int row = 0; row < height(); row++) {
-                this.image.setRGB(col, row, image.image.getRGB(col, row));
-            }
+        if (image.hasDigest && image.digestModCount == image.buffer.modCount()) {
+            hasDigest = true;
+            digest = image.digest;
+            digestModCount = buffer.modCount();
         }
     }
 
@@ -131,16 +186,31 @@ public final class Image implements ActionListener {
      * @throws IllegalArgumentException if {@code name} is {@code null}
      */
     public Image(String name) {
-        if (name == null) {
+        this(name, DecodeOptions.FULL);
+    }
+
+    /**
+     * Creates a image by reading part of an image from a file or URL, as
+     * described by {@code options}. Only the requested pixels are decoded.
+     *
+     * @param name    the name of the file (.png, .gif, or .jpg) or URL.
+     * @param options what to decode
+     * @throws IllegalArgumentException if cannot read image
+     * @throws IllegalArgumentException if {@code name} or {@code options} is {@code null}
+     * @throws IllegalArgumentException if the region of {@code options} is not inside the image
+     */
+    public Image(String name, DecodeOptions options) {
+        if (name == null || options == null) {
             throw new IllegalArgumentException("constructor argument is null");
         }
 
         this.filename = name;
         try {
+            Decoded decoded;
             // try to read from file in working directory
             File file = new File(name);
             if (file.isFile()) {
-                image = ImageIO.read(file);
+                decoded = decode(file, options);
             } else {
 
                 // resource relative to .class file
@@ -156,15 +226,20 @@ public final class Image implements ActionListener {
                     url = new URL(name);
                 }
 
-                image = ImageIO.read(url);
+                try (InputStream in = url.openStream()) {
+                    decoded = decode(in, options);
+                }
             }
 
-            if (image == null) {
+            if (decoded == null) {
                 throw new IllegalArgumentException("could not read image: " + name);
             }
 
-            width = image.getWidth(null);
-            height = image.getHeight(null);
+            width = decoded.width;
+            height = decoded.height;
+            buffer = new ArrayPixelBuffer(width, height, decoded.pixels);
+            left = 0;
+            top = 0;
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("could not open image: " + name, ioe);
@@ -180,24 +255,243 @@ public final class Image implements ActionListener {
      * @throws IllegalArgumentException if {@code file} is {@code null}
      */
     public Image(File file) {
-        if (file == null) {
+        this(file, DecodeOptions.FULL);
+    }
+
+    /**
+     * Creates a image by reading part of the image from a PNG, GIF, or JPEG file,
+     * as described by {@code options}. Only the requested pixels are decoded.
+     *
+     * @param file    the file
+     * @param options what to decode
+     * @throws IllegalArgumentException if cannot read image
+     * @throws IllegalArgumentException if {@code file} or {@code options} is {@code null}
+     * @throws IllegalArgumentException if the region of {@code options} is not inside the image
+     */
+    public Image(File file, DecodeOptions options) {
+        if (file == null || options == null) {
             throw new IllegalArgumentException("constructor argument is null");
         }
 
+        Decoded decoded;
         try {
-            image = ImageIO.read(file);
+            decoded = decode(file, options);
         }
         catch (IOException ioe) {
             throw new IllegalArgumentException("could not open file: " + file, ioe);
         }
-        if (image == null) {
+        if (decoded == null) {
             throw new IllegalArgumentException("could not read file: " + file);
         }
-        width = image.getWidth(null);
-        height = image.getHeight(null);
+        width = decoded.width;
+        height = decoded.height;
+        buffer = new ArrayPixelBuffer(width, height, decoded.pixels);
+        left = 0;
+        top = 0;
         filename = file.getName();
     }
 
+    /**
+     * The opaque pixels of a decoded image, in row-major order.
+     */
+    private static final class Decoded {
+        private final int[] pixels;
+        private final int width, height;
+
+        private Decoded(int[] pixels, int width, int height) {
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Decodes the first image of {@code input} with an {@link ImageReader}, reading only
+     * the region and subsampling asked for by {@code options}.
+     *
+     * @param input   a {@link File} or {@link InputStream} holding the encoded image
+     * @param options what to decode
+     * @return the decoded image, or {@code null} if no reader understands {@code input}
+     * @throws IOException if {@code input} cannot be read
+     */
+    private static Decoded decode(Object input, DecodeOptions options) throws IOException {
+        if (input instanceof File && !((File) input).canRead()) {
+            throw new IOException("Can't read input file!");
+        }
+        BufferedImage image;
+        try (ImageInputStream stream = ImageIO.createImageInputStream(input)) {
+            if (stream == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                Rectangle region = options.region();
+                int regionWidth = reader.getWidth(0);
+                int regionHeight = reader.getHeight(0);
+                if (region != null) {
+                    if (region.xBottomRight >= regionWidth || region.yBottomRight >= regionHeight) {
+                        throw new IllegalArgumentException("region is not inside the "
+                            + regionWidth + "-by-" + regionHeight + " image");
+                    }
+                    regionWidth = region.xBottomRight - region.xTopLeft + 1;
+                    regionHeight = region.yBottomRight - region.yTopLeft + 1;
+                    param.setSourceRegion(new java.awt.Rectangle(
+                        region.xTopLeft, region.yTopLeft, regionWidth, regionHeight));
+                }
+                int subsampling = options.subsampling(regionWidth, regionHeight);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                image = reader.read(0, param);
+            }
+            finally {
+                reader.dispose();
+            }
+        }
+
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] pixels = readPixels(image);
+        if (options.hasTargetSize()) {
+            pixels = resample(pixels, w, h, options.targetWidth(), options.targetHeight());
+            w = options.targetWidth();
+            h = options.targetHeight();
+        }
+        return new Decoded(pixels, w, h);
+    }
+
+    /**
+     * Resamples a {@code w}-by-{@code h} image to {@code tw}-by-{@code th} pixels. Each new
+     * pixel is the average of the pixels it covers, or the nearest pixel when enlarging.
+     *
+     * @param pixels the pixels of the image in row-major order
+     * @return the pixels of the resampled image in row-major order
+     */
+    private static int[] resample(int[] pixels, int w, int h, int tw, int th) {
+        if (w == tw && h == th) {
+            return pixels;
+        }
+        int[] resampled = new int[tw * th];
+        for (int y = 0; y < th; y++) {
+            int rowStart = (int) ((long) y * h / th);
+            int rowEnd = Math.max(rowStart + 1, (int) ((long) (y + 1) * h / th));
+            for (int x = 0; x < tw; x++) {
+                int colStart = (int) ((long) x * w / tw);
+                int colEnd = Math.max(colStart + 1, (int) ((long) (x + 1) * w / tw));
+                long red = 0;
+                long green = 0;
+                long blue = 0;
+                for (int row = rowStart; row < rowEnd; row++) {
+                    for (int col = colStart; col < colEnd; col++) {
+                        int rgb = pixels[row * w + col];
+                        red += (rgb >> 16) & 0xFF;
+                        green += (rgb >> 8) & 0xFF;
+                        blue += rgb & 0xFF;
+                    }
+                }
+                long count = (long) (rowEnd - rowStart) * (colEnd - colStart);
+                resampled[y * tw + x] = OPAQUE | (int) (red / count) << 16
+                    | (int) (green / count) << 8 | (int) (blue / count);
+            }
+        }
+        return resampled;
+    }
+
+    /**
+     * Converts a decoded image into packed, opaque RGB pixels in row-major order.
+     *
+     * @param image the decoded image, not null
+     * @return the pixels of {@code image}
+     */
+    private static int[] readPixels(BufferedImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int[] rgb = image.getRGB(0, 0, w, h, null, 0, w);
+        for (int i = 0; i < rgb.length; i++) {
+            rgb[i] |= OPAQUE;
+        }
+        return rgb;
+    }
+
+    /**
+     * Creates a black {@code width}-by-{@code height} image whose pixels are kept in
+     * a temporary memory-mapped file rather than on the heap. The file is closed and
+     * deleted once the image, and every copy that still shares it, is no longer
+     * reachable, or at the latest when the virtual machine exits.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return a new image backed by a memory-mapped file
+     * @throws IllegalArgumentException if {@code width} or {@code height} is negative or zero
+     * @throws UncheckedIOException if the file cannot be created
+     */
+    public static Image mapped(int width, int height) {
+        validateDimensions(width, height);
+        return new Image(new MappedPixelBuffer(width, height));
+    }
+
+    /**
+     * Creates a {@code width}-by-{@code height} image whose pixels are kept in
+     * the memory-mapped file {@code file}. If the file is empty, a small header with the
+     * dimensions of the image is written to it, followed by black pixels. If the file
+     * was written by this method for an image of the same dimensions, the image has
+     * the pixels saved in it. Any other file is rejected and is not changed. Every
+     * change to the image is written to the file, and copies of the image are kept in
+     * temporary files.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param file   the file that holds the pixels
+     * @return a new image backed by {@code file}
+     * @throws IllegalArgumentException if {@code width} or {@code height} is negative or zero
+     * @throws IllegalArgumentException if {@code file} is {@code null} or cannot be opened,
+     *                                  or if it is neither empty nor the file of an image
+     *                                  of the same dimensions
+     */
+    public static Image mapped(int width, int height, File file) {
+        validateDimensions(width, height);
+        if (file == null) {
+            throw new IllegalArgumentException("file argument is null");
+        }
+        try {
+            return new Image(MappedPixelBuffer.open(width, height, file));
+        }
+        catch (UncheckedIOException uioe) {
+            throw new IllegalArgumentException("could not open file: " + file, uioe.getCause());
+        }
+    }
+
+    /**
+     * Creates a black {@code width}-by-{@code height} image that keeps its pixels
+     * the same way as this image: on the heap, or in a memory-mapped file.
+     * Operations that produce a new image use this so that processing an image
+     * larger than the heap does not allocate its result on the heap.
+     *
+     * @param width  the width of the new image
+     * @param height the height of the new image
+     * @return a new black image stored like this one
+     * @throws IllegalArgumentException if {@code width} or {@code height} is negative or zero
+     */
+    public Image createCompatibleImage(int width, int height) {
+        validateDimensions(width, height);
+        return new Image(buffer.create(width, height));
+    }
+
+    private static void validateDimensions(int width, int height) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive");
+        }
+        if (height <= 0) {
+            throw new IllegalArgumentException("height must be positive");
+        }
+    }
+
     /**
      * Returns the monochrome luminance of the given color as an intensity
      * between 0.0 and 255.0 using the NTSC formula
@@ -230,6 +524,24 @@ public final class Image implements ActionListener {
         return gray;
     }
 
+    /**
+     * Returns a grayscale version of the given color, using the same rounding
+     * as {@link #toGray(Color)} but without creating {@code Color} objects.
+     *
+     * @param rgb the integer representation of the color to convert
+     * @return the integer representation of the grayscale version of {@code rgb}
+     */
+    public static int toGray(int rgb) {
+        int r = (rgb >> 16) & 0xFF;
+        int g = (rgb >> 8) & 0xFF;
+        int b = rgb & 0xFF;
+        int y = r;
+        if (r != g || r != b) {
+            y = (int) (Math.round(0.299 * r + 0.587 * g + 0.114 * b));
+        }
+        return OPAQUE | (y << 16) | (y << 8) | y;
+    }
+
     /**
      * Are the two given colors compatible? Two colors are compatible if the
      * the difference in their monochrome luminances is at least 128.0).
@@ -243,37 +555,13 @@ public final class Image implements ActionListener {
         return Math.abs(intensity(a) - intensity(b)) >= 128.0;
     }
 
-    /**
-     * Unit tests this {@code Image} data type.
-     * Reads a image specified by the command-line argument,
-     * and shows it in a window on the screen.
-     *
-     * @param args the command-line arguments
-     */
-    public static void main(String[] args) {
-        Image image = new Image(args[0]);
-        System.out.printf("%d-by-%d\n", image.width(), image.height());
-        image.show();
-    }
-
-    /**
-     * Returns a {@link JLabel} containing this image, for embedding in a {@link JPanel},
-     * {@link JFrame} or other GUI widget.
-     *
-     * @return the {@code JLabel}
-     */
-    public JLabel getJLabel() {
-        if (image == null) {
-            return null;         // no image available
-        }
-        ImageIcon icon = new ImageIcon(image);
-        return new JLabel(icon);
-    }
-
     /**
      * Sets the origin to be the upper left pixel. This is the default.
      */
     public void setOriginUpperLeft() {
+        if (!isOriginUpperLeft) {
+            hasDigest = false;
+        }
         isOriginUpperLeft = true;
     }
 
@@ -281,46 +569,10 @@ public final class Image implements ActionListener {
      * Sets the origin to be the lower left pixel.
      */
     public void setOriginLowerLeft() {
-        isOriginUpperLeft = false;
-    }
-
-    /**
-     * Displays the image in a window on the screen.
-     */
-
-    // getMenuShortcutKeyMask() deprecated in Java 10 but its replacement
-    // getMenuShortcutKeyMaskEx() is not available in Java 8
-    @SuppressWarnings("deprecation")
-    public void show() {
-
-        // create the GUI for viewing the image if needed
-        if (frame == null) {
-            frame = new JFrame();
-
-            JMenuBar menuBar = new JMenuBar();
-            JMenu menu = new JMenu("File");
-            menuBar.add(menu);
-            JMenuItem menuItem1 = new JMenuItem(" Save...   ");
-            menuItem1.addActionListener(this);
-            menuItem1.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
-                Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
-            menu.add(menuItem1);
-            frame.setJMenuBar(menuBar);
-            frame.setContentPane(getJLabel());
-            // f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-            if (filename == null) {
-                frame.setTitle(width + "-by-" + height);
-            } else {
-                frame.setTitle(filename);
-            }
-            frame.setResizable(false);
-            frame.pack();
-            frame.setVisible(true);
+        if (isOriginUpperLeft) {
+            hasDigest = false;
         }
-
-        // draw
-        frame.repaint();
+        isOriginUpperLeft = false;
     }
 
     /**
@@ -341,6 +593,62 @@ public final class Image implements ActionListener {
         return width;
     }
 
+    /**
+     * Returns the row of the buffer that holds row {@code row} of this image,
+     * taking the location of the origin into account.
+     * The index is assumed to be valid.
+     */
+    private int storageRow(int row) {
+        if (isOriginUpperLeft) {
+            return top + row;
+        } else {
+            return top + height - row - 1;
+        }
+    }
+
+    /**
+     * Returns a live view of the pixels of this image inside {@code region}.
+     * The view does not copy any pixels: it shares them with this image, so a change
+     * made through the view is visible in this image and vice versa.
+     * Pixel (0, 0) of the view is the pixel of this image at the top-left corner of
+     * {@code region}, and the view uses the same origin convention as this image.
+     * The x coordinates of the rectangle are columns, the y coordinates are rows,
+     * and both corners are part of the region.
+     *
+     * @param region the region of this image to view
+     * @return a {@code region}-sized image backed by the pixels of this image
+     * @throws IllegalArgumentException if {@code region} is {@code null} or not inside the image
+     */
+    public Image view(Rectangle region) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
+        }
+        int w = region.xBottomRight - region.xTopLeft + 1;
+        int h = region.yBottomRight - region.yTopLeft + 1;
+        validateRegion(region.xTopLeft, region.yTopLeft, w, h);
+        int storageRow = isOriginUpperLeft ? region.yTopLeft : height - region.yTopLeft - h;
+        return new Image(this, region.xTopLeft, storageRow, w, h);
+    }
+
+    /**
+     * Checks if this image and {@code other} share any pixels, so that changing a
+     * pixel of one may change a pixel of the other. This is the case for an image and
+     * a view of it, and for two views of one image whose regions intersect. An image
+     * and a copy made with {@link #Image(Image)} never overlap.
+     *
+     * @param other the other image, is not null
+     * @return true if a pixel of this image is also a pixel of {@code other}
+     * @throws IllegalArgumentException if {@code other} is {@code null}
+     */
+    public boolean overlaps(Image other) {
+        if (other == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        return buffer == other.buffer
+            && left < other.left + other.width && other.left < left + width
+            && top < other.top + other.height && other.top < top + height;
+    }
+
     private void validateRowIndex(int row) {
         if (row < 0 || row >= height()) {
             throw new IllegalArgumentException(
@@ -383,11 +691,178 @@ public final class Image implements ActionListener {
     public int getRGB(int col, int row) {
         validateColumnIndex(col);
         validateRowIndex(row);
-        if (isOriginUpperLeft) {
-            return image.getRGB(col, row);
-        } else {
-            return image.getRGB(col, height - row - 1);
+        return buffer.get(left + col, storageRow(row));
+    }
+
+    private void validateRegion(int col, int row, int w, int h) {
+        if (w <= 0) {
+            throw new IllegalArgumentException("region width must be positive: " + w);
+        }
+        if (h <= 0) {
+            throw new IllegalArgumentException("region height must be positive: " + h);
+        }
+        validateColumnIndex(col);
+        validateColumnIndex(col + w - 1);
+        validateRowIndex(row);
+        validateRowIndex(row + h - 1);
+    }
+
+    private static void validateArray(int[] rgbArray, int offset, int scansize, int w, int h) {
+        if (rgbArray == null) {
+            throw new IllegalArgumentException("pixel array is null");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must be non-negative: " + offset);
+        }
+        if (scansize < w) {
+            throw new IllegalArgumentException(
+                "scansize must be at least the region width " + w + ": " + scansize);
+        }
+        if ((long) offset + (long) (h - 1) * scansize + w > rgbArray.length) {
+            throw new IllegalArgumentException("pixel array is too small for the region");
+        }
+    }
+
+    /**
+     * Copies the colors of a {@code w}-by-{@code h} region whose top-left pixel is
+     * ({@code col}, {@code row}) into {@code rgbArray}. Pixel ({@code col + i}, {@code row + j})
+     * is stored at {@code rgbArray[offset + j * scansize + i]}.
+     * The region is validated once, and each row is copied in bulk, which is much faster
+     * than calling {@link #getRGB(int, int)} for every pixel.
+     *
+     * @param col      the column index of the top-left pixel of the region
+     * @param row      the row index of the top-left pixel of the region
+     * @param w        the width of the region
+     * @param h        the height of the region
+     * @param rgbArray the array that receives the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if the region is empty or not inside the image
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the region
+     */
+    public void getRGB(int col, int row, int w, int h, int[] rgbArray, int offset, int scansize) {
+        validateRegion(col, row, w, h);
+        validateArray(rgbArray, offset, scansize, w, h);
+        for (int j = 0; j < h; j++) {
+            buffer.getRow(left + col, storageRow(row + j), w, rgbArray, offset + j * scansize);
+        }
+    }
+
+    /**
+     * Sets the colors of a {@code w}-by-{@code h} region whose top-left pixel is
+     * ({@code col}, {@code row}) from {@code rgbArray}. Pixel ({@code col + i}, {@code row + j})
+     * is set to {@code rgbArray[offset + j * scansize + i]}.
+     *
+     * @param col      the column index of the top-left pixel of the region
+     * @param row      the row index of the top-left pixel of the region
+     * @param w        the width of the region
+     * @param h        the height of the region
+     * @param rgbArray the array that holds the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if the region is empty or not inside the image
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the region
+     */
+    public void setRGB(int col, int row, int w, int h, int[] rgbArray, int offset, int scansize) {
+        validateRegion(col, row, w, h);
+        validateArray(rgbArray, offset, scansize, w, h);
+        for (int j = 0; j < h; j++) {
+            buffer.setRow(left + col, storageRow(row + j), w, rgbArray, offset + j * scansize);
+        }
+    }
+
+    /**
+     * Copies the colors of the pixels inside {@code region} into {@code rgbArray}.
+     * The x coordinates of the rectangle are columns, the y coordinates are rows,
+     * and both corners are part of the region.
+     *
+     * @param region   the region to copy
+     * @param rgbArray the array that receives the colors
+     * @param offset   the position in {@code rgbArray} of the top-left pixel of the region
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if {@code region} is {@code null} or not inside the image
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the region
+     * @see #getRGB(int, int, int, int, int[], int, int)
+     */
+    public void getRGB(Rectangle region, int[] rgbArray, int offset, int scansize) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
+        }
+        getRGB(region.xTopLeft, region.yTopLeft, region.xBottomRight - region.xTopLeft + 1,
+            region.yBottomRight - region.yTopLeft + 1, rgbArray, offset, scansize);
+    }
+
+    /**
+     * Sets the colors of the pixels inside {@code region} from {@code rgbArray}.
+     * The x coordinates of the rectangle are columns, the y coordinates are rows,
+     * and both corners are part of the region.
+     *
+     * @param region   the region to set
+     * @param rgbArray the array that holds the colors
+     * @param offset   the position in {@code rgbArray} of the top-left pixel of the region
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if {@code region} is {@code null} or not inside the image
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the region
+     * @see #setRGB(int, int, int, int, int[], int, int)
+     */
+    public void setRGB(Rectangle region, int[] rgbArray, int offset, int scansize) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
         }
+        setRGB(region.xTopLeft, region.yTopLeft, region.xBottomRight - region.xTopLeft + 1,
+            region.yBottomRight - region.yTopLeft + 1, rgbArray, offset, scansize);
+    }
+
+    /**
+     * Copies the colors of all pixels of the image into {@code rgbArray}.
+     *
+     * @param rgbArray the array that receives the colors
+     * @param offset   the position in {@code rgbArray} of pixel (0, 0)
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the image
+     */
+    public void getRGB(int[] rgbArray, int offset, int scansize) {
+        getRGB(0, 0, width, height, rgbArray, offset, scansize);
+    }
+
+    /**
+     * Sets the colors of all pixels of the image from {@code rgbArray}.
+     *
+     * @param rgbArray the array that holds the colors
+     * @param offset   the position in {@code rgbArray} of pixel (0, 0)
+     * @param scansize the distance in {@code rgbArray} between the starts of two rows
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the image
+     */
+    public void setRGB(int[] rgbArray, int offset, int scansize) {
+        setRGB(0, 0, width, height, rgbArray, offset, scansize);
+    }
+
+    /**
+     * Copies the colors of row {@code row} into {@code rgbArray},
+     * starting at position {@code offset}.
+     *
+     * @param row      the row index
+     * @param rgbArray the array that receives the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel of the row
+     * @throws IllegalArgumentException unless {@code 0 <= row < height}
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the row
+     */
+    public void getRow(int row, int[] rgbArray, int offset) {
+        getRGB(0, row, width, 1, rgbArray, offset, width);
+    }
+
+    /**
+     * Sets the colors of row {@code row} from {@code rgbArray},
+     * starting at position {@code offset}.
+     *
+     * @param row      the row index
+     * @param rgbArray the array that holds the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel of the row
+     * @throws IllegalArgumentException unless {@code 0 <= row < height}
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the row
+     */
+    public void setRow(int row, int[] rgbArray, int offset) {
+        setRGB(0, row, width, 1, rgbArray, offset, width);
     }
 
     /**
@@ -420,11 +895,18 @@ public final class Image implements ActionListener {
     public void setRGB(int col, int row, int rgb) {
         validateColumnIndex(col);
         validateRowIndex(row);
-        if (isOriginUpperLeft) {
-            image.setRGB(col, row, rgb);
-        } else {
-            image.setRGB(col, height - row - 1, rgb);
-        }
+        buffer.set(left + col, storageRow(row), rgb | OPAQUE);
+    }
+
+    /**
+     * Makes sure this image does not share its pixels with a copy of it, duplicating
+     * them now if it does, without changing any pixel. A copy made with
+     * {@link #Image(Image)} duplicates its pixels on its first change; code that is
+     * about to change an image from several threads at once calls this first, so that
+     * the duplication happens once, on the calling thread.
+     */
+    public void ensureUnshared() {
+        buffer.unshare();
     }
 
     /**
@@ -451,16 +933,58 @@ public final class Image implements ActionListener {
         if (this.height() != that.height()) {
             return false;
         }
-        for (int col = 0; col < width(); col++) {
-            for (int row = 0; row < height(); row++) {
-                if (this.getRGB(col, row) != that.getRGB(col, row)) {
-                    return false;
-                }
+        if (this.buffer.sharesStorageWith(that.buffer) && this.left == that.left
+            && this.top == that.top && this.isOriginUpperLeft == that.isOriginUpperLeft) {
+            return true;
+        }
+        if (this.hasCurrentDigest() && that.hasCurrentDigest() && this.digest != that.digest) {
+            return false;
+        }
+        int[] pixels = new int[width];
+        for (int row = 0; row < height; row++) {
+            that.getRow(row, pixels, 0);
+            if (!buffer.rowEquals(left, storageRow(row), width, pixels, 0)) {
+                return false;
             }
         }
         return true;
     }
 
+    private boolean hasCurrentDigest() {
+        return hasDigest && digestModCount == buffer.modCount();
+    }
+
+    /**
+     * Returns a 64-bit digest of the dimensions and pixels of this image.
+     * Equal images have equal digests, and different images are very unlikely
+     * to have the same digest. The digest is computed the first time it is needed
+     * and then reused until the pixels of the image (or of an image that shares
+     * them, such as a view) change.
+     *
+     * @return the digest of this image
+     */
+    public long digest() {
+        if (!hasCurrentDigest()) {
+            long modCount = buffer.modCount();
+            long h = DIGEST_SEED ^ ((long) width << 32 | height);
+            int[] pixels = new int[width];
+            for (int row = 0; row < height; row++) {
+                getRow(row, pixels, 0);
+                for (int pixel : pixels) {
+                    h = Long.rotateLeft(h ^ (pixel * DIGEST_PRIME), 27) * DIGEST_PRIME + row;
+                }
+            }
+            // final avalanche, so that every pixel affects every bit
+            h ^= h >>> 33;
+            h *= DIGEST_MIX;
+            h ^= h >>> 33;
+            digest = h;
+            digestModCount = modCount;
+            hasDigest = true;
+        }
+        return digest;
+    }
+
     /**
      * Returns a string representation of this image.
      * The result is a <code>width</code>-by-<code>height</code> matrix of pixels,
@@ -474,12 +998,7 @@ public final class Image implements ActionListener {
         sb.append(width + "-by-" + height + " image (RGB values given in hex)\n");
         for (int row = 0; row < height; row++) {
             for (int col = 0; col < width; col++) {
-                int rgb = 0;
-                if (isOriginUpperLeft) {
-                    rgb = image.getRGB(col, row);
-                } else {
-                    rgb = image.getRGB(col, height - row - 1);
-                }
+                int rgb = buffer.get(left + col, storageRow(row));
                 sb.append(String.format("#%06X ", rgb & 0xFFFFFF));
             }
             sb.append("\n");
@@ -488,14 +1007,35 @@ public final class Image implements ActionListener {
     }
 
     /**
-     * This operation is not supported because pictures are mutable.
+     * Returns a hash code derived from the {@linkplain #digest() digest} of this image.
+     * Since images are mutable, the hash code changes when the image changes:
+     * an image must not be changed while it is a key in a hash-based collection.
      *
-     * @return does not return a value
-     * @throws UnsupportedOperationException if called
+     * @return a hash code for this image
      */
     public int hashCode() {
-        throw new UnsupportedOperationException(
-            "hashCode() is not supported because pictures are mutable");
+        long h = digest();
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Obtain the name of the file this image was last read from or saved to.
+     *
+     * @return the name of the file, or {@code null} if there is none
+     */
+    String filename() {
+        return filename;
+    }
+
+    /**
+     * Obtain a {@link BufferedImage} with the pixels of this image.
+     *
+     * @param live if the {@code BufferedImage} should keep showing later changes
+     *             to this image, when the storage allows it
+     * @return a {@code TYPE_INT_RGB} image with the pixels of this image
+     */
+    BufferedImage toBufferedImage(boolean live) {
+        return buffer.toBufferedImage(left, top, width, height, live);
     }
 
     /**
@@ -524,13 +1064,10 @@ public final class Image implements ActionListener {
             throw new IllegalArgumentException("argument to save() is null");
         }
         filename = file.getName();
-        if (frame != null) {
-            frame.setTitle(filename);
-        }
         String suffix = filename.substring(filename.lastIndexOf('.') + 1);
         if ("jpg".equalsIgnoreCase(suffix) || "png".equalsIgnoreCase(suffix)) {
             try {
-                ImageIO.write(image, suffix, file);
+                ImageIO.write(toBufferedImage(false), suffix, file);
             }
             catch (IOException e) {
                 e.printStackTrace();
@@ -539,19 +1076,4 @@ public final class Image implements ActionListener {
             System.out.println("Error: filename must end in .jpg or .png");
         }
     }
-
-    /**
-     * Opens a save dialog box when the user selects "Save As" from the menu.
-     */
-    @Override
-    public void actionPerformed(ActionEvent e) {
-        FileDialog chooser = new FileDialog(frame,
-            "Use a .png or .jpg extension", FileDialog.SAVE);
-        chooser.setVisible(true);
-        if (chooser.getFile() != null) {
-            save(chooser.getDirectory() + File.separator + chooser.getFile());
-        }
-    }
-
 }
-
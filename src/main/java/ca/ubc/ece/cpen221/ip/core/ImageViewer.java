@@ -0,0 +1,132 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import javax.swing.ImageIcon;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.KeyStroke;
+import java.awt.FileDialog;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.io.File;
+
+/**
+ * This class displays an {@link Image} in a window on the screen, with a
+ * menu for saving it to a file. All of the Swing code for images lives here,
+ * so that {@code Image} itself can be used without a display.
+ * <p>
+ * The window shows the pixels of the image live: calling {@link #show()}
+ * again after the image has changed redraws it with the new pixels.
+ */
+public final class ImageViewer implements ActionListener {
+    private final Image image;
+    private JFrame frame;
+
+    /*
+        Abstraction Function:
+            Represents the on-screen window for image, which is frame once
+            it has been shown, and does not exist yet while frame is null.
+
+        Representation Invariant:
+            image != null
+     */
+
+    /**
+     * Creates a viewer for {@code image}. No window is opened until
+     * {@link #show()} is called.
+     *
+     * @param image the image to display, is not null
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     */
+    public ImageViewer(Image image) {
+        if (image == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        this.image = image;
+    }
+
+    /**
+     * Unit tests the {@code Image} data type.
+     * Reads a image specified by the command-line argument,
+     * and shows it in a window on the screen.
+     *
+     * @param args the command-line arguments
+     */
+    public static void main(String[] args) {
+        Image image = new Image(args[0]);
+        System.out.printf("%d-by-%d\n", image.width(), image.height());
+        new ImageViewer(image).show();
+    }
+
+    /**
+     * Returns a {@link JLabel} containing the image, for embedding in a {@link JPanel},
+     * {@link JFrame} or other GUI widget.
+     *
+     * @return the {@code JLabel}
+     */
+    public JLabel getJLabel() {
+        // live, so that later changes to the image show up in the label
+        return new JLabel(new ImageIcon(image.toBufferedImage(true)));
+    }
+
+    /**
+     * Displays the image in a window on the screen.
+     */
+
+    // getMenuShortcutKeyMask() deprecated in Java 10 but its replacement
+    // getMenuShortcutKeyMaskEx() is not available in Java 8
+    @SuppressWarnings("deprecation")
+    public void show() {
+
+        // create the GUI for viewing the image if needed
+        if (frame == null) {
+            frame = new JFrame();
+
+            JMenuBar menuBar = new JMenuBar();
+            JMenu menu = new JMenu("File");
+            menuBar.add(menu);
+            JMenuItem menuItem1 = new JMenuItem(" Save...   ");
+            menuItem1.addActionListener(this);
+            menuItem1.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_S,
+                Toolkit.getDefaultToolkit().getMenuShortcutKeyMask()));
+            menu.add(menuItem1);
+            frame.setJMenuBar(menuBar);
+            frame.setContentPane(getJLabel());
+            frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+            frame.setResizable(false);
+            frame.pack();
+            frame.setVisible(true);
+        }
+
+        // draw
+        updateTitle();
+        frame.repaint();
+    }
+
+    private void updateTitle() {
+        if (image.filename() == null) {
+            frame.setTitle(image.width() + "-by-" + image.height());
+        } else {
+            frame.setTitle(image.filename());
+        }
+    }
+
+    /**
+     * Opens a save dialog box when the user selects "Save As" from the menu.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        FileDialog chooser = new FileDialog(frame,
+            "Use a .png or .jpg extension", FileDialog.SAVE);
+        chooser.setVisible(true);
+        if (chooser.getFile() != null) {
+            image.save(chooser.getDirectory() + File.separator + chooser.getFile());
+            updateTitle();
+        }
+    }
+}
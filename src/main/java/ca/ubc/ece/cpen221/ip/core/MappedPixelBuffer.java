@@ -0,0 +1,510 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Cleaner;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link PixelBuffer} that keeps its pixels in a memory-mapped file instead of
+ * on the heap, so that images larger than the heap can be processed.
+ * <p>
+ * The file starts with a header of four big-endian {@code int}s: the magic number
+ * {@value #MAGIC}, the width, the height and the tile size. The rest of the file is
+ * divided into square tiles of {@value #TILE_SIZE}-by-{@value #TILE_SIZE}
+ * pixels, stored one after the other in row-major tile order, with the pixels of
+ * each tile in row-major order as native-endian {@code int}s. Only a bounded number
+ * of tiles is mapped at any time, and paging is left to the operating system. The
+ * bound is large enough for one row of tiles per processor and one more, and at least
+ * {@value #MIN_RESIDENT_TILES}, so that scanning the rows of a wide image in parallel
+ * strips maps every tile once. When it is exceeded, the least recently used tiles
+ * are unmapped, down to one row of tiles below the bound. A tile is unmapped
+ * explicitly rather than left to the garbage collector, so that the bound holds;
+ * the tiles of a file chosen by the caller are forced to the file first.
+ * <p>
+ * A buffer backed by a file chosen by the caller is pinned: its pixels always stay
+ * in that file, and copies of it are made eagerly, tile row by tile row.
+ * Other buffers live in temporary files. The buffers that share a file hold one
+ * {@link Storage}; once none of them is reachable, the file is closed and, if it
+ * is temporary, deleted, so that a long run over many images does not keep their
+ * files open or on disk. Temporary files that are still in use are deleted when the
+ * virtual machine exits; only those files are remembered until then.
+ * <p>
+ * Several threads can work on different parts of the same image at once: the pixels
+ * are read and written under a shared lock, and tiles are mapped without blocking
+ * the other threads. Only unmapping tiles and replacing the storage take the lock
+ * exclusively.
+ */
+final class MappedPixelBuffer extends PixelBuffer {
+    static final int TILE_SIZE = 256;
+    static final int MIN_RESIDENT_TILES = 64;
+    private static final int TILE_PIXELS = TILE_SIZE * TILE_SIZE;
+    private static final long TILE_BYTES = (long) TILE_PIXELS * Integer.BYTES;
+    private static final int MAGIC = 0x50544C31;   // "PTL1"
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final MethodHandle UNMAP = unmapper();
+    private static final Set<File> TEMPORARY_FILES = temporaryFiles();
+
+    private final int tilesAcross;
+    private final int tilesDown;
+    private final int maxResident;
+    private Storage storage;
+    private final Map<Integer, Tile> resident = new ConcurrentHashMap<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /*
+        Abstraction Function:
+            Pixel (x, y) has the color stored at position
+            (y % TILE_SIZE) * TILE_SIZE + (x % TILE_SIZE) of tile
+            (y / TILE_SIZE) * tilesAcross + (x / TILE_SIZE) of storage.file, made opaque;
+            tile t starts at byte HEADER_BYTES + t * TILE_BYTES of the file.
+            A file that has just been created holds zeros, which are black pixels.
+            resident maps tile numbers to the tiles that are currently mapped, and
+            the lastUse of a tile is the value of clock when it was last used; a tile
+            that is not in resident is not mapped by this buffer.
+            Pixels are read and written, and tiles mapped, with the read lock of lock
+            held; tiles are unmapped and storage replaced with its write lock held.
+
+        Representation Invariant:
+            tilesAcross == ceil(width / TILE_SIZE)
+            tilesDown == ceil(height / TILE_SIZE)
+            storage.channel is open on storage.file, which has the header of a
+                width-by-height image and holds tilesAcross * tilesDown tiles
+            maxResident == max(MIN_RESIDENT_TILES, (processors + 1) * tilesAcross)
+            resident.size() <= maxResident whenever no method of this buffer is running
+     */
+
+    /**
+     * A mapped tile: the mapping, which is released when the tile is evicted, the
+     * view of its pixels and when it was last used.
+     */
+    private static final class Tile {
+        final MappedByteBuffer bytes;
+        final IntBuffer pixels;
+        volatile long lastUse;
+
+        Tile(MappedByteBuffer bytes) {
+            this.bytes = bytes;
+            pixels = bytes.order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+
+    /**
+     * An open file of tiles, shared by the buffers that share their storage. The file is
+     * closed, and deleted if it is temporary, once no buffer refers to this object.
+     */
+    private static final class Storage {
+        final File file;
+        final FileChannel channel;
+        final boolean temporary;
+
+        Storage(File file, FileChannel channel, boolean temporary) {
+            this.file = file;
+            this.channel = channel;
+            this.temporary = temporary;
+            CLEANER.register(this, new Release(file, channel, temporary));
+        }
+    }
+
+    /**
+     * Closes the file of a {@link Storage} and deletes it if it is temporary. It does not
+     * refer to the storage, so that the storage can become unreachable.
+     */
+    private static final class Release implements Runnable {
+        private final File file;
+        private final FileChannel channel;
+        private final boolean temporary;
+
+        Release(File file, FileChannel channel, boolean temporary) {
+            this.file = file;
+            this.channel = channel;
+            this.temporary = temporary;
+        }
+
+        @Override
+        public void run() {
+            try {
+                channel.close();
+            }
+            catch (IOException ioe) {
+                // nothing is left to write: the pixels were written through the mapped tiles
+            }
+            if (temporary) {
+                file.delete();
+                TEMPORARY_FILES.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Create the set of the temporary files that have not been deleted yet, and delete
+     * the files still in it when the virtual machine exits. Unlike
+     * {@link File#deleteOnExit()}, a file is forgotten as soon as it has been deleted.
+     *
+     * @return an empty concurrent set
+     */
+    private static Set<File> temporaryFiles() {
+        Set<File> files = ConcurrentHashMap.newKeySet();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (File file : files) {
+                file.delete();
+            }
+        }, "mapped image cleanup"));
+        return files;
+    }
+
+    private MappedPixelBuffer(int width, int height, Storage storage) {
+        super(width, height);
+        tilesAcross = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesDown = (height + TILE_SIZE - 1) / TILE_SIZE;
+        int processors = Runtime.getRuntime().availableProcessors();
+        maxResident = (int) Math.min(Integer.MAX_VALUE,
+            Math.max(MIN_RESIDENT_TILES, (processors + 1L) * tilesAcross));
+        this.storage = storage;
+    }
+
+    /**
+     * Create a black buffer backed by a temporary file.
+     *
+     * @param width  is positive
+     * @param height is positive
+     * @throws UncheckedIOException if the temporary file cannot be created
+     */
+    MappedPixelBuffer(int width, int height) {
+        this(width, height, openTemporaryFile(width, height));
+    }
+
+    /**
+     * Create a pinned buffer backed by {@code file}. If the file is empty, a header and
+     * black pixels are written to it; if it holds a buffer of the same dimensions, its
+     * pixels are kept. Any other file is rejected and left unchanged.
+     *
+     * @param width  is positive
+     * @param height is positive
+     * @param file   is not null
+     * @return a buffer whose pixels are stored in {@code file}
+     * @throws UncheckedIOException if the file cannot be opened, or is neither empty
+     *                              nor the file of a {@code width}-by-{@code height} buffer
+     */
+    static MappedPixelBuffer open(int width, int height, File file) {
+        MappedPixelBuffer buffer = new MappedPixelBuffer(width, height, openFile(width, height, file, false));
+        buffer.pin();
+        return buffer;
+    }
+
+    private static Storage openTemporaryFile(int width, int height) {
+        File file;
+        try {
+            file = File.createTempFile("image", ".tiles");
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("could not create a file for the image", ioe);
+        }
+        TEMPORARY_FILES.add(file);
+        try {
+            return openFile(width, height, file, true);
+        }
+        catch (UncheckedIOException uioe) {
+            file.delete();
+            TEMPORARY_FILES.remove(file);
+            throw uioe;
+        }
+    }
+
+    private static Storage openFile(int width, int height, File file, boolean temporary) {
+        FileChannel channel = null;
+        try {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            long tiles = (long) ((width + TILE_SIZE - 1) / TILE_SIZE) * ((height + TILE_SIZE - 1) / TILE_SIZE);
+            long size = HEADER_BYTES + tiles * TILE_BYTES;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            if (channel.size() == 0) {
+                header.putInt(MAGIC).putInt(width).putInt(height).putInt(TILE_SIZE).flip();
+                channel.write(header, 0);
+                // sparse on most file systems: the tiles read as black
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+            else {
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC
+                    || header.getInt() != width || header.getInt() != height
+                    || header.getInt() != TILE_SIZE || channel.size() < size) {
+                    throw new IOException(file + " does not hold the pixels of a "
+                        + width + "-by-" + height + " image");
+                }
+            }
+            return new Storage(file, channel, temporary);
+        }
+        catch (IOException ioe) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                }
+                catch (IOException closing) {
+                    ioe.addSuppressed(closing);
+                }
+            }
+            throw new UncheckedIOException("could not open " + file, ioe);
+        }
+    }
+
+    /**
+     * Obtain a tile, mapping it if it is not resident. The read lock must be held,
+     * and the tile may only be used while it is.
+     *
+     * @param tile the number of the tile
+     * @param now  the time of the use, from {@code clock}
+     * @return the pixels of the tile
+     */
+    private IntBuffer tile(int tile, long now) {
+        Tile mapped = resident.get(tile);
+        if (mapped == null) {
+            mapped = resident.computeIfAbsent(tile, this::map);
+        }
+        mapped.lastUse = now;
+        return mapped.pixels;
+    }
+
+    private Tile map(int tile) {
+        try {
+            return new Tile(storage.channel.map(FileChannel.MapMode.READ_WRITE,
+                HEADER_BYTES + tile * TILE_BYTES, TILE_BYTES));
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("could not map a tile of " + storage.file, ioe);
+        }
+    }
+
+    /**
+     * Unmaps the least recently used tiles if more than {@code maxResident} are mapped,
+     * down to one row of tiles fewer, so that tiles are not unmapped on every access.
+     * The read lock must not be held.
+     */
+    private void evict() {
+        if (resident.size() <= maxResident) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            // another thread may have evicted the tiles while this one waited for the lock
+            if (resident.size() <= maxResident) {
+                return;
+            }
+            int excess = resident.size() - (maxResident - tilesAcross);
+            List<Map.Entry<Integer, Tile>> tiles = new ArrayList<>(resident.entrySet());
+            tiles.sort(Comparator.comparingLong(entry -> entry.getValue().lastUse));
+            for (Map.Entry<Integer, Tile> entry : tiles.subList(0, excess)) {
+                resident.remove(entry.getKey());
+                release(entry.getValue());
+            }
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unmaps a tile that has been removed from {@code resident}, writing it to the file
+     * first if the file is not temporary. The write lock must be held. Neither the tile
+     * nor its pixels may be used afterwards.
+     */
+    private void release(Tile tile) {
+        if (!storage.temporary) {
+            tile.bytes.force();
+        }
+        if (UNMAP != null) {
+            try {
+                UNMAP.invokeExact((ByteBuffer) tile.bytes);
+            }
+            catch (Throwable t) {
+                throw new IllegalStateException("could not unmap a tile of " + storage.file, t);
+            }
+        }
+    }
+
+    /**
+     * Unmaps all the tiles of this buffer. The write lock must be held.
+     */
+    private void releaseAll() {
+        for (Tile tile : resident.values()) {
+            release(tile);
+        }
+        resident.clear();
+    }
+
+    /**
+     * Obtain {@code sun.misc.Unsafe.invokeCleaner}, which unmaps a {@link MappedByteBuffer}
+     * at once. Without it, an evicted tile stays mapped until it is garbage collected.
+     *
+     * @return the method bound to the instance of {@code Unsafe}, or {@code null} if
+     *         it is not available
+     */
+    private static MethodHandle unmapper() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field instance = unsafeClass.getDeclaredField("theUnsafe");
+            instance.setAccessible(true);
+            return MethodHandles.lookup()
+                .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                .bindTo(instance.get(null));
+        }
+        catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private IntBuffer tileAt(int x, int y, long now) {
+        return tile((y / TILE_SIZE) * tilesAcross + x / TILE_SIZE, now);
+    }
+
+    private static int positionInTile(int x, int y) {
+        return (y % TILE_SIZE) * TILE_SIZE + x % TILE_SIZE;
+    }
+
+    @Override
+    int get(int x, int y) {
+        int rgb;
+        lock.readLock().lock();
+        try {
+            rgb = tileAt(x, y, clock.incrementAndGet()).get(positionInTile(x, y));
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        evict();
+        return rgb | Image.OPAQUE;
+    }
+
+    @Override
+    void set(int x, int y, int rgb) {
+        beforeWrite();
+        lock.readLock().lock();
+        try {
+            tileAt(x, y, clock.incrementAndGet()).put(positionInTile(x, y), rgb);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        evict();
+    }
+
+    @Override
+    void getRow(int x, int y, int w, int[] dst, int offset) {
+        lock.readLock().lock();
+        try {
+            long now = clock.incrementAndGet();
+            int col = x;
+            while (col < x + w) {
+                int span = Math.min(TILE_SIZE - col % TILE_SIZE, x + w - col);
+                tileAt(col, y, now).get(positionInTile(col, y), dst, offset + col - x, span);
+                col += span;
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        evict();
+        for (int i = offset; i < offset + w; i++) {
+            dst[i] |= Image.OPAQUE;
+        }
+    }
+
+    @Override
+    void setRow(int x, int y, int w, int[] src, int offset) {
+        beforeWrite();
+        lock.readLock().lock();
+        try {
+            long now = clock.incrementAndGet();
+            int col = x;
+            while (col < x + w) {
+                int span = Math.min(TILE_SIZE - col % TILE_SIZE, x + w - col);
+                tileAt(col, y, now).put(positionInTile(col, y), src, offset + col - x, span);
+                col += span;
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        evict();
+    }
+
+    @Override
+    PixelBuffer create(int width, int height) {
+        return new MappedPixelBuffer(width, height);
+    }
+
+    @Override
+    PixelBuffer shareStorage() {
+        lock.readLock().lock();
+        try {
+            return new MappedPixelBuffer(width, height, storage);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    void duplicateStorage() {
+        lock.writeLock().lock();
+        try {
+            copyStorage();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void copyStorage() {
+        // the other buffers that share the old storage keep it open
+        Storage copy = openTemporaryFile(width, height);
+        try {
+            FileChannel source = storage.channel;
+            long size = source.size();
+            long done = 0;
+            while (done < size) {
+                done += source.transferTo(done, size - done, copy.channel);
+            }
+        }
+        catch (IOException ioe) {
+            throw new UncheckedIOException("could not copy " + storage.file, ioe);
+        }
+        releaseAll();
+        storage = copy;
+    }
+
+    @Override
+    BufferedImage toBufferedImage(int x, int y, int w, int h, boolean live) {
+        // the pixels are not on the heap, so the image is always a copy, taken row by row
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[w];
+        for (int j = 0; j < h; j++) {
+            getRow(x, y + j, w, row, 0);
+            image.setRGB(0, j, w, 1, row, 0, w);
+        }
+        return image;
+    }
+}
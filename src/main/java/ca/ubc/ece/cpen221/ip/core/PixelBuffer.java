@@ -0,0 +1,204 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * This datatype stores the packed pixels of an image. An image and all of
+ * its views refer to the same {@code PixelBuffer}, so when the storage has to
+ * be replaced every one of them sees the new storage. Pixels are addressed
+ * by their column {@code x} and row {@code y} in the buffer, with the
+ * origin in the top-left corner.
+ * <p>
+ * Copies of a buffer start out sharing the storage of the original
+ * (copy-on-write): the storage is only duplicated when one of the buffers
+ * that share it is written to for the first time.
+ */
+abstract class PixelBuffer {
+    final int width, height;
+    private Share share = new Share();
+    private boolean pinned;
+    private long modCount;
+
+    /*
+        Abstraction Function:
+            Represents a width-by-height grid of packed RGB pixels. All PixelBuffers
+            with the same share object refer to the same storage, and share.count
+            is the number of them. A pinned buffer has handed its storage to a live
+            BufferedImage and never gives it up. modCount counts the writes to this
+            buffer, so that values computed from its pixels can tell when they are stale.
+
+        Representation Invariant:
+            width >= 1
+            height >= 1
+            share.count >= 1
+            if pinned then share.count == 1
+     */
+
+    /**
+     * The number of buffers that refer to one storage.
+     */
+    private static final class Share {
+        private int count = 1;
+    }
+
+    /**
+     * Create a buffer of the given dimensions.
+     *
+     * @param width  is positive
+     * @param height is positive
+     */
+    PixelBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Obtain the color of pixel ({@code x}, {@code y}).
+     *
+     * @param x the column, 0 <= x < width
+     * @param y the row, 0 <= y < height
+     * @return the opaque color of the pixel
+     */
+    abstract int get(int x, int y);
+
+    /**
+     * Set the color of pixel ({@code x}, {@code y}).
+     *
+     * @param x   the column, 0 <= x < width
+     * @param y   the row, 0 <= y < height
+     * @param rgb the opaque color of the pixel
+     */
+    abstract void set(int x, int y, int rgb);
+
+    /**
+     * Copy the colors of {@code w} pixels of row {@code y}, starting at column {@code x},
+     * into {@code dst}, starting at position {@code offset}.
+     * The span and the array range are assumed to be valid.
+     */
+    abstract void getRow(int x, int y, int w, int[] dst, int offset);
+
+    /**
+     * Set the colors of {@code w} pixels of row {@code y}, starting at column {@code x},
+     * from {@code src}, starting at position {@code offset}. The colors are made opaque.
+     * The span and the array range are assumed to be valid.
+     */
+    abstract void setRow(int x, int y, int w, int[] src, int offset);
+
+    /**
+     * Obtain a new black buffer of the same kind as this one.
+     *
+     * @param width  is positive
+     * @param height is positive
+     * @return a new {@code width}-by-{@code height} black buffer
+     */
+    abstract PixelBuffer create(int width, int height);
+
+    /**
+     * Obtain a new buffer that refers to the same storage as this one.
+     *
+     * @return a buffer over the storage of this buffer
+     */
+    abstract PixelBuffer shareStorage();
+
+    /**
+     * Replace the storage of this buffer by a private copy of it.
+     */
+    abstract void duplicateStorage();
+
+    /**
+     * Obtain a {@code TYPE_INT_RGB} {@link BufferedImage} with the pixels of a region.
+     *
+     * @param x    the column of the top-left pixel of the region
+     * @param y    the row of the top-left pixel of the region
+     * @param w    the width of the region
+     * @param h    the height of the region
+     * @param live if the {@code BufferedImage} should keep showing later changes,
+     *             when the storage allows it
+     * @return a {@code BufferedImage} with the pixels of the region
+     */
+    abstract BufferedImage toBufferedImage(int x, int y, int w, int h, boolean live);
+
+    /**
+     * Check if {@code w} pixels of row {@code y}, starting at column {@code x}, have the
+     * colors held in {@code row}, starting at position {@code offset}.
+     * The span and the array range are assumed to be valid.
+     *
+     * @return {@code true} if all the colors are the same, {@code false} otherwise
+     */
+    boolean rowEquals(int x, int y, int w, int[] row, int offset) {
+        int[] stored = new int[w];
+        getRow(x, y, w, stored, 0);
+        return Arrays.equals(stored, 0, w, row, offset, offset + w);
+    }
+
+    /**
+     * Check if this buffer and {@code other} refer to the same storage,
+     * in which case they have the same pixels.
+     *
+     * @param other is not null
+     * @return {@code true} if the storage is shared, {@code false} otherwise
+     */
+    final boolean sharesStorageWith(PixelBuffer other) {
+        return share == other.share;
+    }
+
+    /**
+     * Obtain the number of writes made to this buffer so far.
+     *
+     * @return a count that changes every time the pixels may have changed
+     */
+    final long modCount() {
+        return modCount;
+    }
+
+    /**
+     * Make sure the storage is not shared before it is modified.
+     * Every method that modifies the storage calls this first.
+     */
+    final void beforeWrite() {
+        modCount++;
+        unshare();
+    }
+
+    /**
+     * Make sure the storage is not shared, without changing any pixel.
+     */
+    final void unshare() {
+        if (share.count > 1) {
+            share.count--;
+            duplicateStorage();
+            share = new Share();
+        }
+    }
+
+    /**
+     * Obtain a buffer with the same pixels as this one. Unless this buffer is
+     * pinned, the storage is shared and no pixels are copied.
+     *
+     * @return a new buffer with the same pixels
+     */
+    final PixelBuffer copy() {
+        if (pinned) {
+            PixelBuffer copy = create(width, height);
+            int[] row = new int[width];
+            for (int y = 0; y < height; y++) {
+                getRow(0, y, width, row, 0);
+                copy.setRow(0, y, width, row, 0);
+            }
+            return copy;
+        }
+        PixelBuffer copy = shareStorage();
+        share.count++;
+        copy.share = share;
+        return copy;
+    }
+
+    /**
+     * Make sure this buffer owns its storage and keeps it for good.
+     */
+    final void pin() {
+        beforeWrite();
+        pinned = true;
+    }
+}
@@ -0,0 +1,239 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.Color;
+
+/**
+ * This datatype represents a mutable image whose color channels are stored
+ * in separate planes: one {@code byte} per pixel for red, one for green and
+ * one for blue, each plane in row-major order with the origin in the top-left
+ * corner. Compared to an {@link Image}, which packs the three channels of a
+ * pixel into one {@code int}, a {@code PlanarImage} takes three bytes per pixel
+ * instead of four, and an operation on one channel runs over contiguous bytes
+ * without unpacking and repacking every pixel.
+ * <p>
+ * The planes are returned by {@link #red()}, {@link #green()} and {@link #blue()}
+ * without copying. The value of the pixel in column {@code col} and row {@code row}
+ * of a channel is {@code plane[row * width() + col] & 0xFF}. Rows of packed pixels
+ * are split into the planes and joined again by {@link #setRow(int, int[], int)}
+ * and {@link #getRow(int, int[], int)}.
+ */
+public final class PlanarImage {
+    private final int width, height;
+    private final byte[] red, green, blue;
+
+    /*
+        Abstraction Function:
+            Represents a width-by-height image in which the pixel in column col and
+            row row has the color (r, g, b), where r, g and b are the unsigned values
+            of red, green and blue at position row * width + col.
+
+        Representation Invariant:
+            width >= 1
+            height >= 1
+            red.length == green.length == blue.length == width * height
+     */
+
+    /**
+     * Creates a {@code width}-by-{@code height} image where each pixel is black.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @throws IllegalArgumentException if {@code width} is negative or zero
+     * @throws IllegalArgumentException if {@code height} is negative or zero
+     */
+    public PlanarImage(int width, int height) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("width must be positive");
+        }
+        if (height <= 0) {
+            throw new IllegalArgumentException("height must be positive");
+        }
+        if ((long) width * height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("image is too large for planar storage");
+        }
+        this.width = width;
+        this.height = height;
+        red = new byte[width * height];
+        green = new byte[width * height];
+        blue = new byte[width * height];
+    }
+
+    /**
+     * Creates a planar image with the pixels of {@code image}.
+     *
+     * @param image the image to convert, is not null
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     */
+    public PlanarImage(Image image) {
+        this(validateImage(image).width(), image.height());
+        int[] pixels = new int[width];
+        for (int row = 0; row < height; row++) {
+            image.getRow(row, pixels, 0);
+            setRow(row, pixels, 0);
+        }
+    }
+
+    private static Image validateImage(Image image) {
+        if (image == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        return image;
+    }
+
+    /**
+     * Obtain an {@link Image} with the pixels of this image.
+     *
+     * @return a new image with the same pixels as this one
+     */
+    public Image toImage() {
+        Image image = new Image(width, height);
+        int[] pixels = new int[width];
+        for (int row = 0; row < height; row++) {
+            getRow(row, pixels, 0);
+            image.setRow(row, pixels, 0);
+        }
+        return image;
+    }
+
+    /**
+     * Copies the colors of row {@code row}, packed as by {@link Image#getRGB(int, int)},
+     * into {@code rgbArray}, starting at position {@code offset}.
+     *
+     * @param row      the row index
+     * @param rgbArray the array that receives the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel of the row
+     * @throws IllegalArgumentException unless {@code 0 <= row < height}
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the row
+     */
+    public void getRow(int row, int[] rgbArray, int offset) {
+        int start = index(0, row);
+        validateRowArray(rgbArray, offset);
+        for (int col = 0; col < width; col++) {
+            rgbArray[offset + col] = Image.OPAQUE | (red[start + col] & 0xFF) << 16
+                | (green[start + col] & 0xFF) << 8 | blue[start + col] & 0xFF;
+        }
+    }
+
+    /**
+     * Sets the colors of row {@code row} from {@code rgbArray},
+     * starting at position {@code offset}. The alpha components are ignored.
+     *
+     * @param row      the row index
+     * @param rgbArray the array that holds the colors
+     * @param offset   the position in {@code rgbArray} of the first pixel of the row
+     * @throws IllegalArgumentException unless {@code 0 <= row < height}
+     * @throws IllegalArgumentException if {@code rgbArray} is {@code null} or cannot hold the row
+     */
+    public void setRow(int row, int[] rgbArray, int offset) {
+        int start = index(0, row);
+        validateRowArray(rgbArray, offset);
+        for (int col = 0; col < width; col++) {
+            int rgb = rgbArray[offset + col];
+            red[start + col] = (byte) (rgb >> 16);
+            green[start + col] = (byte) (rgb >> 8);
+            blue[start + col] = (byte) rgb;
+        }
+    }
+
+    private void validateRowArray(int[] rgbArray, int offset) {
+        if (rgbArray == null) {
+            throw new IllegalArgumentException("pixel array is null");
+        }
+        if (offset < 0) {
+            throw new IllegalArgumentException("offset must be non-negative: " + offset);
+        }
+        if ((long) offset + width > rgbArray.length) {
+            throw new IllegalArgumentException("pixel array is too small for the row");
+        }
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width of the image (in pixels)
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height of the image (in pixels)
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Obtain the red plane of this image. The array is not a copy:
+     * changes to it change this image.
+     *
+     * @return the red values of the pixels, in row-major order
+     */
+    public byte[] red() {
+        return red;
+    }
+
+    /**
+     * Obtain the green plane of this image. The array is not a copy:
+     * changes to it change this image.
+     *
+     * @return the green values of the pixels, in row-major order
+     */
+    public byte[] green() {
+        return green;
+    }
+
+    /**
+     * Obtain the blue plane of this image. The array is not a copy:
+     * changes to it change this image.
+     *
+     * @return the blue values of the pixels, in row-major order
+     */
+    public byte[] blue() {
+        return blue;
+    }
+
+    /**
+     * Returns the color of pixel ({@code col}, {@code row}) as a {@link java.awt.Color}.
+     *
+     * @param col the column index
+     * @param row the row index
+     * @return the color of pixel ({@code col}, {@code row})
+     * @throws IllegalArgumentException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     */
+    public Color get(int col, int row) {
+        int i = index(col, row);
+        return new Color(red[i] & 0xFF, green[i] & 0xFF, blue[i] & 0xFF);
+    }
+
+    /**
+     * Sets the color of pixel ({@code col}, {@code row}) to the given color.
+     *
+     * @param col   the column index
+     * @param row   the row index
+     * @param color the color
+     * @throws IllegalArgumentException unless both {@code 0 <= col < width} and {@code 0 <= row < height}
+     * @throws IllegalArgumentException if {@code color} is {@code null}
+     */
+    public void set(int col, int row, Color color) {
+        int i = index(col, row);
+        if (color == null) {
+            throw new IllegalArgumentException("color argument is null");
+        }
+        red[i] = (byte) color.getRed();
+        green[i] = (byte) color.getGreen();
+        blue[i] = (byte) color.getBlue();
+    }
+
+    private int index(int col, int row) {
+        if (col < 0 || col >= width) {
+            throw new IllegalArgumentException("column index must be between 0 and " + (width - 1) + ": " + col);
+        }
+        if (row < 0 || row >= height) {
+            throw new IllegalArgumentException("row index must be between 0 and " + (height - 1) + ": " + row);
+        }
+        return row * width + col;
+    }
+}
@@ -0,0 +1,54 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+/**
+ * How a neighbourhood operation such as {@link ImageTransformer#convolve(ConvolutionKernel, BorderPolicy)}
+ * finds the pixels of a window that fall outside the image.
+ */
+public enum BorderPolicy {
+    /**
+     * A pixel outside the image has the colour of the nearest pixel on the edge of the image.
+     */
+    CLAMP,
+
+    /**
+     * The image is mirrored at its edges, including the edge pixel: the column left of
+     * column 0 is column 0, the one left of that is column 1, and so on.
+     */
+    REFLECT,
+
+    /**
+     * The image repeats: the column left of column 0 is the last column, and the row
+     * below the last row is row 0.
+     */
+    WRAP,
+
+    /**
+     * A pixel outside the image is black.
+     */
+    ZERO;
+
+    /**
+     * Finds the pixel used for position {@code index} of a line of {@code length} pixels.
+     *
+     * @param index  the position, which may be outside the line
+     * @param length the number of pixels in the line, is positive
+     * @return the position between 0 and {@code length - 1} of the pixel to use,
+     *         or -1 for a black pixel
+     */
+    int map(int index, int length) {
+        if (index >= 0 && index < length) {
+            return index;
+        }
+        switch (this) {
+            case CLAMP:
+                return index < 0 ? 0 : length - 1;
+            case REFLECT:
+                int i = Math.floorMod(index, 2 * length);
+                return i < length ? i : 2 * length - 1 - i;
+            case WRAP:
+                return Math.floorMod(index, length);
+            default:
+                return -1;
+        }
+    }
+}
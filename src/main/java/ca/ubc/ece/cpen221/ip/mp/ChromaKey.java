@@ -0,0 +1,191 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+import java.awt.Color;
+import java.util.Arrays;
+
+/**
+ * This datatype represents an <strong>immutable</strong> chroma key: a key colour and
+ * a tolerance, which together decide which pixels of an image belong to a screen of
+ * that colour, for {@link ImageTransformer#greenScreen(ChromaKey, ca.ubc.ece.cpen221.ip.core.Image)}
+ * and {@link ImageTransformer#connectedComponents(ChromaKey)}.
+ * <p>
+ * A pixel matches the key if its distance to the key colour is at most the tolerance.
+ * The distance is either the Euclidean distance between the red, green and blue
+ * components ({@link #rgb(Color, double)}), or the Euclidean distance between the
+ * chroma components Cb and Cr of the colours in the YCbCr colour space
+ * ({@link #ycbcr(Color, double)}), which leaves out the brightness (the luma Y), so
+ * that uneven light on a screen matters less: adding the same amount to every
+ * component of a colour does not change its chroma. A key with a tolerance of 0 and the
+ * RGB distance matches exactly the pixels of the key colour. The alpha component of
+ * the key colour is ignored.
+ * <p>
+ * Distances are compared as integers: Cb and Cr are computed with 7-bit fixed-point
+ * weights that add up to exactly 0 for a gray. An image is keyed once into a bit mask,
+ * with SIMD code when the {@code jdk.incubator.vector} module is enabled, and the
+ * search for the screen and the compositing read only the mask.
+ */
+public final class ChromaKey {
+    // the weights of the red, green and blue components in Cb and Cr, times 128
+    static final int CB_RED = -22;
+    static final int CB_GREEN = -42;
+    static final int CB_BLUE = 64;
+    static final int CR_RED = 64;
+    static final int CR_GREEN = -54;
+    static final int CR_BLUE = -10;
+
+    private static final double CHROMA_SCALE = 128 * 128;
+
+    private final int red, green, blue;
+    private final boolean chroma;
+    private final int limit;
+
+    /*
+        Abstraction Function:
+            Represents the key that matches a pixel with components (r, g, b) if
+            distance(r - red, g - green, b - blue) <= limit, where distance is
+            the sum of the squares of the differences if chroma is false, and the
+            sum of the squares of Cb and Cr of the differences, times 128 * 128,
+            if chroma is true.
+
+        Representation Invariant:
+            red, green and blue are between 0 and 255
+            limit >= 0
+     */
+
+    private ChromaKey(Color key, boolean chroma, double tolerance, double scale) {
+        if (key == null) {
+            throw new IllegalArgumentException("key colour is null");
+        }
+        if (!(tolerance >= 0) || Double.isInfinite(tolerance)) {
+            throw new IllegalArgumentException("tolerance must be finite and not negative: " + tolerance);
+        }
+        this.red = key.getRed();
+        this.green = key.getGreen();
+        this.blue = key.getBlue();
+        this.chroma = chroma;
+        this.limit = (int) Math.min(Integer.MAX_VALUE, Math.floor(tolerance * tolerance * scale));
+    }
+
+    /**
+     * Obtain the key that matches the pixels whose red, green and blue components are
+     * within a Euclidean distance of {@code tolerance} of those of {@code key}.
+     *
+     * @param key       the colour of the screen, is not null
+     * @param tolerance the largest distance of a matching pixel, is finite and not negative;
+     *                  the largest distance between two colours is {@code 255 * sqrt(3)}
+     * @return the key
+     * @throws IllegalArgumentException if {@code key} is {@code null} or {@code tolerance}
+     *                                  is negative or not finite
+     */
+    public static ChromaKey rgb(Color key, double tolerance) {
+        return new ChromaKey(key, false, tolerance, 1);
+    }
+
+    /**
+     * Obtain the key that matches the pixels whose chroma components Cb and Cr are
+     * within a Euclidean distance of {@code tolerance} of those of {@code key}, whatever
+     * their brightness.
+     *
+     * @param key       the colour of the screen, is not null
+     * @param tolerance the largest distance of a matching pixel, is finite and not negative;
+     *                  Cb and Cr are between -127.5 and 127.5
+     * @return the key
+     * @throws IllegalArgumentException if {@code key} is {@code null} or {@code tolerance}
+     *                                  is negative or not finite
+     */
+    public static ChromaKey ycbcr(Color key, double tolerance) {
+        return new ChromaKey(key, true, tolerance, CHROMA_SCALE);
+    }
+
+    /**
+     * Checks if a colour matches this key.
+     *
+     * @param colour the colour, is not null
+     * @return true if {@code colour} is within the tolerance of the key colour
+     */
+    public boolean matches(Color colour) {
+        return matches(colour.getRGB());
+    }
+
+    private boolean matches(int rgb) {
+        int r = ((rgb >> 16) & 0xFF) - red;
+        int g = ((rgb >> 8) & 0xFF) - green;
+        int b = (rgb & 0xFF) - blue;
+        if (!chroma) {
+            return r * r + g * g + b * b <= limit;
+        }
+        int cb = CB_RED * r + CB_GREEN * g + CB_BLUE * b;
+        int cr = CR_RED * r + CR_GREEN * g + CR_BLUE * b;
+        return cb * cb + cr * cr <= limit;
+    }
+
+    int red() {
+        return red;
+    }
+
+    int green() {
+        return green;
+    }
+
+    int blue() {
+        return blue;
+    }
+
+    boolean isChroma() {
+        return chroma;
+    }
+
+    int limit() {
+        return limit;
+    }
+
+    /**
+     * Sets the bits of {@code mask} for the first {@code length} pixels of {@code pixels}
+     * that match this key; the bit of pixel {@code i} is bit {@code index + i} of the mask,
+     * 64 to a {@code long}.
+     */
+    void mask(int[] pixels, int length, long[] mask, long index) {
+        int done = PointKernels.VECTORIZED ? VectorPointKernels.chromaKey(this, pixels, length, mask, index) : 0;
+        for (int i = done; i < length; i++) {
+            if (matches(pixels[i])) {
+                long bit = index + i;
+                mask[(int) (bit >>> 6)] |= 1L << bit;
+            }
+        }
+    }
+
+    /**
+     * Keys rows {@code from} (inclusive) to {@code to} (exclusive) of {@code image} into
+     * {@code mask}, clearing their bits first. Bit {@code row * width + col} of the mask
+     * is the bit of the pixel in column {@code col} of row {@code row}; the bit of the
+     * first pixel of row {@code from} starts a {@code long}, and the rows after
+     * {@code to} have no bits in the {@code long}s of these rows unless they are
+     * keyed by the same thread.
+     */
+    void mask(Image image, long[] mask, int from, int to) {
+        int width = image.width();
+        Arrays.fill(mask, (int) ((long) from * width >>> 6), (int) (((long) to * width + Long.SIZE - 1) >>> 6), 0L);
+        int[] pixels = new int[width];
+        for (int row = from; row < to; row++) {
+            image.getRow(row, pixels, 0);
+            mask(pixels, width, mask, (long) row * width);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ChromaKey)) {
+            return false;
+        }
+        ChromaKey that = (ChromaKey) other;
+        return red == that.red && green == that.green && blue == that.blue
+            && chroma == that.chroma && limit == that.limit;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (red << 16 | green << 8 | blue) + Boolean.hashCode(chroma)) + limit;
+    }
+}
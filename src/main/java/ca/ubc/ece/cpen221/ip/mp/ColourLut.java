@@ -0,0 +1,259 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.PlanarImage;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * This datatype represents an <strong>immutable</strong> point operation given by
+ * three lookup tables, one for each colour component: the red, green and blue
+ * components of every pixel are replaced by the entries of the red, green and
+ * blue tables at those components. The result does not depend on the position
+ * of the pixel or on its neighbours.
+ * <p>
+ * Point operations can be combined ahead of time with {@link #andThen(ColourLut)}:
+ * the combined tables apply any number of operations with one lookup per component.
+ * Tables for the point operations of {@link ImageTransformer} are provided by
+ * {@link #NEGATIVE}, {@link #POSTERIZE} and {@link #RED}, and tables for tone curves
+ * by {@link #gamma(double)}, {@link #levels(int, int)} and {@link #curve(IntUnaryOperator)}.
+ * <p>
+ * An operation applies to a {@link PlanarImage} one plane at a time, with
+ * {@link #apply(PlanarImage)}: every byte of a plane is replaced by the entry of the
+ * table of that plane, without unpacking and repacking any pixel.
+ */
+public final class ColourLut {
+    private static final int ENTRIES = 256;
+    private static final int MAX_COLOUR_VALUE = 255;
+    private static final int OPAQUE = 0xFF000000;
+
+    /**
+     * Leaves every pixel unchanged.
+     */
+    public static final ColourLut IDENTITY = curve(c -> c);
+
+    /**
+     * Replaces every component {@code c} by {@code 255 - c}, as {@link ImageTransformer#negative()}.
+     */
+    public static final ColourLut NEGATIVE = curve(c -> MAX_COLOUR_VALUE - c);
+
+    /**
+     * Posterizes every component, as {@link ImageTransformer#posterize()}.
+     */
+    public static final ColourLut POSTERIZE = curve(PointKernels::posterize);
+
+    /**
+     * Keeps only the red component, as {@link ImageTransformer#red()}.
+     */
+    public static final ColourLut RED = new ColourLut(IDENTITY.red, new int[ENTRIES], new int[ENTRIES]);
+
+    private final int[] red, green, blue;
+    private final byte[] redBytes, greenBytes, blueBytes;
+
+    /*
+        Abstraction Function:
+            Represents the point operation that maps a pixel with components (r, g, b)
+            to the opaque pixel with components (red[r], green[g], blue[b]).
+
+        Representation Invariant:
+            red.length == green.length == blue.length == 256
+            every entry of red, green and blue is between 0 and 255
+            redBytes, greenBytes and blueBytes hold the entries of red, green and blue
+     */
+
+    private ColourLut(int[] red, int[] green, int[] blue) {
+        this.red = red;
+        this.green = green;
+        this.blue = blue;
+        redBytes = toBytes(red);
+        greenBytes = toBytes(green);
+        blueBytes = toBytes(blue);
+    }
+
+    private static byte[] toBytes(int[] table) {
+        byte[] bytes = new byte[ENTRIES];
+        for (int c = 0; c < ENTRIES; c++) {
+            bytes[c] = (byte) table[c];
+        }
+        return bytes;
+    }
+
+    /**
+     * Obtain the point operation given by three lookup tables.
+     *
+     * @param red   the new value of every red component, 256 entries between 0 and 255
+     * @param green the new value of every green component, 256 entries between 0 and 255
+     * @param blue  the new value of every blue component, 256 entries between 0 and 255
+     * @return the point operation given by the tables
+     * @throws IllegalArgumentException if a table is {@code null}, does not have 256
+     *                                  entries or has an entry outside 0 to 255
+     */
+    public static ColourLut of(int[] red, int[] green, int[] blue) {
+        return new ColourLut(validateTable(red), validateTable(green), validateTable(blue));
+    }
+
+    private static int[] validateTable(int[] table) {
+        if (table == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        if (table.length != ENTRIES) {
+            throw new IllegalArgumentException("lookup table must have 256 entries: " + table.length);
+        }
+        for (int entry : table) {
+            if (entry < 0 || entry > MAX_COLOUR_VALUE) {
+                throw new IllegalArgumentException("lookup table entry must be between 0 and 255: " + entry);
+            }
+        }
+        return table.clone();
+    }
+
+    /**
+     * Obtain the point operation that applies {@code f} to every component.
+     *
+     * @param f maps every value between 0 and 255 to a value between 0 and 255, is not null
+     * @return the point operation given by {@code f}
+     * @throws IllegalArgumentException if {@code f} is {@code null} or returns a value outside 0 to 255
+     */
+    public static ColourLut curve(IntUnaryOperator f) {
+        if (f == null) {
+            throw new IllegalArgumentException("curve is null");
+        }
+        int[] table = new int[ENTRIES];
+        for (int c = 0; c < ENTRIES; c++) {
+            table[c] = f.applyAsInt(c);
+        }
+        table = validateTable(table);
+        return new ColourLut(table, table, table);
+    }
+
+    /**
+     * Obtain the gamma correction with exponent {@code gamma}: every component
+     * {@code c} becomes {@code 255 * (c / 255)^(1 / gamma)}, rounded to the nearest integer.
+     *
+     * @param gamma the gamma, is positive and finite
+     * @return the gamma correction
+     * @throws IllegalArgumentException if {@code gamma} is not positive and finite
+     */
+    public static ColourLut gamma(double gamma) {
+        if (!(gamma > 0) || Double.isInfinite(gamma)) {
+            throw new IllegalArgumentException("gamma must be positive: " + gamma);
+        }
+        return curve(c -> (int) Math.round(MAX_COLOUR_VALUE
+            * Math.pow((double) c / MAX_COLOUR_VALUE, 1 / gamma)));
+    }
+
+    /**
+     * Obtain the levels adjustment that stretches the components between {@code black}
+     * and {@code white} to the full range: components up to {@code black} become 0,
+     * components from {@code white} become 255, and the components between them are
+     * scaled linearly, rounded to the nearest integer.
+     *
+     * @param black the component that becomes 0, at least 0
+     * @param white the component that becomes 255, greater than {@code black} and at most 255
+     * @return the levels adjustment
+     * @throws IllegalArgumentException unless {@code 0 <= black < white <= 255}
+     */
+    public static ColourLut levels(int black, int white) {
+        if (black < 0 || white > MAX_COLOUR_VALUE || black >= white) {
+            throw new IllegalArgumentException("levels must satisfy 0 <= black < white <= 255");
+        }
+        return curve(c -> {
+            if (c <= black) {
+                return 0;
+            } else if (c >= white) {
+                return MAX_COLOUR_VALUE;
+            }
+            return (int) Math.round((double) (c - black) * MAX_COLOUR_VALUE / (white - black));
+        });
+    }
+
+    /**
+     * Obtain the point operation that applies this operation and then {@code after}.
+     *
+     * @param after the operation to apply second, is not null
+     * @return the combined operation
+     * @throws IllegalArgumentException if {@code after} is {@code null}
+     */
+    public ColourLut andThen(ColourLut after) {
+        if (after == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        return new ColourLut(compose(red, after.red), compose(green, after.green), compose(blue, after.blue));
+    }
+
+    private static int[] compose(int[] first, int[] second) {
+        int[] table = new int[ENTRIES];
+        for (int c = 0; c < ENTRIES; c++) {
+            table[c] = second[first[c]];
+        }
+        return table;
+    }
+
+    /**
+     * Apply this operation to a pixel.
+     *
+     * @param rgb the integer representation of a colour
+     * @return the integer representation of the opaque colour this operation maps it to
+     */
+    public int apply(int rgb) {
+        return OPAQUE | red[(rgb >> 16) & 0xFF] << 16 | green[(rgb >> 8) & 0xFF] << 8 | blue[rgb & 0xFF];
+    }
+
+    /**
+     * Apply this operation in place to the pixels of {@code pixels} from
+     * {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    void apply(int[] pixels, int from, int to) {
+        for (int i = from; i < to; i++) {
+            int pixel = pixels[i];
+            pixels[i] = OPAQUE | red[(pixel >> 16) & 0xFF] << 16
+                | green[(pixel >> 8) & 0xFF] << 8 | blue[pixel & 0xFF];
+        }
+    }
+
+    /**
+     * Apply this operation in place to a planar image, one plane at a time.
+     *
+     * @param image the image to change, is not null
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     */
+    public void apply(PlanarImage image) {
+        if (image == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        apply(image, 0, image.height());
+    }
+
+    /**
+     * Apply this operation in place to rows {@code from} (inclusive) to {@code to}
+     * (exclusive) of {@code image}, one plane at a time.
+     */
+    void apply(PlanarImage image, int from, int to) {
+        int start = from * image.width();
+        int end = to * image.width();
+        applyToPlane(image.red(), redBytes, start, end);
+        applyToPlane(image.green(), greenBytes, start, end);
+        applyToPlane(image.blue(), blueBytes, start, end);
+    }
+
+    private static void applyToPlane(byte[] plane, byte[] table, int start, int end) {
+        for (int i = start; i < end; i++) {
+            plane[i] = table[plane[i] & 0xFF];
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ColourLut)) {
+            return false;
+        }
+        ColourLut that = (ColourLut) other;
+        return Arrays.equals(red, that.red) && Arrays.equals(green, that.green)
+            && Arrays.equals(blue, that.blue);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(red) + Arrays.hashCode(green)) + Arrays.hashCode(blue);
+    }
+}
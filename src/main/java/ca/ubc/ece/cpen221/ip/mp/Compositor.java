@@ -0,0 +1,329 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
+
+/**
+ * This datatype represents an <strong>immutable</strong> way of compositing a background
+ * image behind the screen found by
+ * {@link ImageTransformer#greenScreen(ChromaKey, Compositor)}: how the background covers
+ * the image, by repeating it ({@link #tile(Image)}) or by stretching it to the size of
+ * the image ({@link #scale(Image)}), and how sharp the edge of the screen is
+ * ({@link #withSoftEdge(int)}).
+ * <p>
+ * The background is composited one row at a time. A row of the background is read
+ * once with one bulk copy and laid out along the row of the image, by repeated bulk
+ * copies when it is tiled; each run of screen pixels in the key mask is then replaced
+ * with one more bulk copy, and the row is written back with one bulk copy, so
+ * that compositing is about one pass over the memory of the screen region.
+ */
+public final class Compositor {
+    private static final int OPAQUE = 0xFF000000;
+
+    private final Image background;
+    private final boolean scale;
+    private final int softEdge;
+
+    /*
+        Abstraction Function:
+            Represents the compositing of background behind the pixels of a key mask,
+            tiled from the top-left corner of the image if scale is false and
+            stretched to the size of the image if scale is true. If softEdge is 0,
+            every pixel of the mask takes the colour of the background; otherwise
+            every pixel becomes a mix of itself and the background, weighted by the
+            fraction of the pixels of the mask within softEdge rows and columns of it.
+
+        Representation Invariant:
+            background is not null and is not changed
+            softEdge >= 0
+     */
+
+    private Compositor(Image background, boolean scale, int softEdge) {
+        this.background = background;
+        this.scale = scale;
+        this.softEdge = softEdge;
+    }
+
+    private static Image copy(Image background) {
+        if (background == null) {
+            throw new IllegalArgumentException("background is null");
+        }
+        return new Image(background);
+    }
+
+    /**
+     * Obtain the compositor that repeats {@code background} across the image, with
+     * its top-left corner on the top-left corner of the image, and replaces the
+     * pixels of the screen exactly.
+     *
+     * @param background the background, is not null; it is copied, so later changes
+     *                   to it do not change the compositor
+     * @return the compositor
+     * @throws IllegalArgumentException if {@code background} is {@code null}
+     */
+    public static Compositor tile(Image background) {
+        return new Compositor(copy(background), false, 0);
+    }
+
+    /**
+     * Obtain the compositor that stretches {@code background} to the size of the image,
+     * taking for every pixel the nearest pixel of the background, and replaces the
+     * pixels of the screen exactly.
+     *
+     * @param background the background, is not null; it is copied, so later changes
+     *                   to it do not change the compositor
+     * @return the compositor
+     * @throws IllegalArgumentException if {@code background} is {@code null}
+     */
+    public static Compositor scale(Image background) {
+        return new Compositor(copy(background), true, 0);
+    }
+
+    /**
+     * Obtain a compositor that covers the image with the background as this one does,
+     * but blends the edge of the screen: every pixel of the screen region becomes a mix
+     * of itself and the background, in proportion to the fraction of screen pixels
+     * within {@code radius} rows and columns of it. Screen pixels far from the edge
+     * are replaced, other pixels far from it are kept, and the pixels near the edge
+     * fade from one to the other.
+     *
+     * @param radius the half width of the edge, in pixels, is not negative; 0 gives a hard edge
+     * @return the compositor with a soft edge
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public Compositor withSoftEdge(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative");
+        }
+        return new Compositor(background, scale, radius);
+    }
+
+    /**
+     * Composites the background behind rows {@code from} (inclusive) to {@code to}
+     * (exclusive) of {@code region} of {@code target}.
+     *
+     * @param target the image, whose pixel buffer is not shared with another image
+     * @param mask   the screen pixels of {@code target}, one bit per pixel, row after
+     *               row, 64 pixels to a {@code long}
+     * @param region the region of {@code target} to composite, both corners included
+     * @param from   the first row of {@code region} to composite
+     * @param to     the row after the last row of {@code region} to composite
+     */
+    void composite(Image target, long[] mask, Rectangle region, int from, int to) {
+        composite(target, mask, region, from, to, null);
+    }
+
+    /**
+     * Composites the background behind rows {@code from} (inclusive) to {@code to}
+     * (exclusive) of {@code region} of {@code target}, taking the background from
+     * {@code layout} if it is not {@code null}.
+     *
+     * @param target the image, whose pixel buffer is not shared with another image
+     * @param mask   the screen pixels of {@code target}, one bit per pixel, row after
+     *               row, 64 pixels to a {@code long}
+     * @param region the region of {@code target} to composite, both corners included
+     * @param from   the first row of {@code region} to composite
+     * @param to     the row after the last row of {@code region} to composite
+     * @param layout null, or the background laid out over an image of the size of
+     *               {@code target}, by {@link #layout(int, int)}
+     */
+    void composite(Image target, long[] mask, Rectangle region, int from, int to, Image layout) {
+        int width = target.width();
+        int left = region.xTopLeft;
+        int length = region.xBottomRight - left + 1;
+        Image view = target.view(region);
+        Image backView = layout == null ? null : layout.view(region);
+        int[] pixels = new int[length];
+        int[] back = new int[length];
+        BackgroundRows rows = layout == null ? new BackgroundRows(width, target.height(), left, length) : null;
+        SoftEdge edge = softEdge == 0 ? null : new SoftEdge(target, mask, region, region.yTopLeft + from);
+        for (int i = from; i < to; i++) {
+            int row = region.yTopLeft + i;
+            view.getRow(i, pixels, 0);
+            if (rows == null) {
+                backView.getRow(i, back, 0);
+            } else {
+                rows.read(row, back);
+            }
+            if (edge == null) {
+                long start = (long) row * width + left;
+                long end = start + length;
+                for (long s = ConnectedComponents.next(mask, start, end, true); s < end; s = ConnectedComponents.next(mask, s, end, true)) {
+                    long e = ConnectedComponents.next(mask, s, end, false);
+                    System.arraycopy(back, (int) (s - start), pixels, (int) (s - start), (int) (e - s));
+                    s = e;
+                }
+            } else {
+                edge.blend(row, pixels, back);
+            }
+            view.setRow(i, pixels, 0);
+        }
+    }
+
+    /**
+     * Lays out the background over a whole image, as it is composited behind the
+     * screen of an image of that size, so that it can be prepared once for many
+     * images of the same size.
+     *
+     * @param width  the width of the image, is positive
+     * @param height the height of the image, is positive
+     * @return a {@code width}-by-{@code height} image of the background
+     */
+    Image layout(int width, int height) {
+        Image layout = new Image(width, height);
+        BackgroundRows rows = new BackgroundRows(width, height, 0, width);
+        int[] back = new int[width];
+        for (int row = 0; row < height; row++) {
+            rows.read(row, back);
+            layout.setRow(row, back, 0);
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the half width of the soft edge, in pixels, or 0 for a hard edge: the
+     * compositing of a pixel reads the mask at most this many rows away from it.
+     */
+    int softEdge() {
+        return softEdge;
+    }
+
+    /**
+     * Lays out rows of the background along a range of columns of the image,
+     * reading each row of the background once for consecutive rows of the image
+     * that use it.
+     */
+    private final class BackgroundRows {
+        private final int width, height, left, length;
+        private final int[] row;
+        private final int[] columns;
+        private int current = -1;
+
+        BackgroundRows(int width, int height, int left, int length) {
+            this.width = width;
+            this.height = height;
+            this.left = left;
+            this.length = length;
+            row = new int[background.width()];
+            columns = scale ? new int[length] : null;
+            if (scale) {
+                for (int j = 0; j < length; j++) {
+                    columns[j] = (int) ((long) (left + j) * background.width() / width);
+                }
+            }
+        }
+
+        /**
+         * Puts the background of columns {@code left} to {@code left + length - 1}
+         * of row {@code imageRow} of the image in {@code back}.
+         */
+        void read(int imageRow, int[] back) {
+            int backWidth = background.width();
+            int backRow = scale ? (int) ((long) imageRow * background.height() / height)
+                : imageRow % background.height();
+            if (backRow == current) {
+                return;
+            }
+            current = backRow;
+            background.getRow(backRow, row, 0);
+            if (scale) {
+                for (int j = 0; j < length; j++) {
+                    back[j] = row[columns[j]];
+                }
+                return;
+            }
+            int phase = left % backWidth;
+            for (int done = 0; done < length; ) {
+                int copy = Math.min(backWidth - phase, length - done);
+                System.arraycopy(row, phase, back, done, copy);
+                done += copy;
+                phase = 0;
+            }
+        }
+    }
+
+    /**
+     * Counts the screen pixels around every pixel of a region, one row at a time,
+     * keeping for every column the number of screen pixels in the rows within
+     * {@code softEdge} of the current row.
+     */
+    private final class SoftEdge {
+        private final long[] mask;
+        private final int width, height, left, right, first, last;
+        private final int[] counts;
+        private int current;
+
+        SoftEdge(Image target, long[] mask, Rectangle region, int row) {
+            this.mask = mask;
+            this.width = target.width();
+            this.height = target.height();
+            this.left = region.xTopLeft;
+            this.right = region.xBottomRight;
+            first = Math.max(0, left - softEdge);
+            last = Math.min(width - 1, right + softEdge);
+            counts = new int[last - first + 1];
+            for (int r = Math.max(0, row - softEdge); r <= Math.min(height - 1, row + softEdge); r++) {
+                count(r, 1);
+            }
+            current = row;
+        }
+
+        private void count(int row, int delta) {
+            long start = (long) row * width;
+            for (int col = first; col <= last; col++) {
+                long bit = start + col;
+                if ((mask[(int) (bit >>> 6)] & 1L << bit) != 0) {
+                    counts[col - first] += delta;
+                }
+            }
+        }
+
+        /**
+         * Mixes {@code pixels}, the region of row {@code row}, with {@code back}, the
+         * background of that row. Rows are blended in increasing order.
+         */
+        void blend(int row, int[] pixels, int[] back) {
+            for (; current < row; current++) {
+                if (current - softEdge >= 0) {
+                    count(current - softEdge, -1);
+                }
+                if (current + softEdge + 1 < height) {
+                    count(current + softEdge + 1, 1);
+                }
+            }
+            int rows = Math.min(height - 1, row + softEdge) - Math.max(0, row - softEdge) + 1;
+            int covered = 0;
+            for (int col = first; col < Math.min(last + 1, left + softEdge); col++) {
+                covered += counts[col - first];
+            }
+            for (int col = left; col <= right; col++) {
+                if (col + softEdge <= last) {
+                    covered += counts[col + softEdge - first];
+                }
+                if (col - softEdge - 1 >= first) {
+                    covered -= counts[col - softEdge - 1 - first];
+                }
+                int area = rows * (Math.min(last, col + softEdge) - Math.max(first, col - softEdge) + 1);
+                int j = col - left;
+                if (covered == area) {
+                    pixels[j] = back[j];
+                } else if (covered != 0) {
+                    pixels[j] = mix(back[j], pixels[j], covered, area);
+                }
+            }
+        }
+    }
+
+    /**
+     * Mixes two colours, {@code weight / total} of {@code a} and the rest of {@code b},
+     * rounding every component to the nearest integer.
+     */
+    private static int mix(int a, int b, int weight, int total) {
+        long rest = total - weight;
+        long half = total / 2;
+        long red = (((a >> 16) & 0xFF) * (long) weight + ((b >> 16) & 0xFF) * rest + half) / total;
+        long green = (((a >> 8) & 0xFF) * (long) weight + ((b >> 8) & 0xFF) * rest + half) / total;
+        long blue = ((a & 0xFF) * (long) weight + (b & 0xFF) * rest + half) / total;
+        return OPAQUE | (int) red << 16 | (int) green << 8 | (int) blue;
+    }
+}
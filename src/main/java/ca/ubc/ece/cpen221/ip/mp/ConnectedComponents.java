@@ -0,0 +1,527 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
+
+import java.awt.geom.Point2D;
+import java.util.Arrays;
+
+/**
+ * This datatype represents an <strong>immutable</strong> labelling of the 8-connected
+ * components of a set of pixels of an image, such as the pixels that match a
+ * {@link ChromaKey} in {@link ImageTransformer#connectedComponents(ChromaKey)}: every
+ * pixel of the set has the label of its component, from 1 to the number of components,
+ * and every other pixel has the label 0. Components are numbered in the order of their first
+ * pixel, row by row. The area, bounding rectangle and centroid of every component
+ * are found without listing the pixels of any component, and without a label per
+ * pixel.
+ * <p>
+ * The components are found with one pass over the image, which is held as a bit
+ * mask and read one run of consecutive pixels of the set at a time. The rows are
+ * split into bands of {@link #BAND} rows. The pass gives every run of a band a
+ * provisional label of the band, the label of a run it touches in the row above if
+ * there is one, joins the provisional labels of the other runs it touches with a
+ * union-find forest, and adds the run to the statistics of its provisional label.
+ * The bands are independent, so they are labelled in parallel. The provisional labels
+ * that touch across the boundaries between bands are then joined. Only when the label
+ * of a pixel is first asked for are the bands labelled again, in parallel, into an
+ * array of labels with the label of its component for every pixel; the statistics
+ * alone need no more memory than the mask, whatever the size of the image.
+ */
+public final class ConnectedComponents {
+    /**
+     * The number of rows labelled together by the first pass.
+     */
+    static final int BAND = 64;
+
+    private static final int WORD_BITS = 64;
+    private static final int INITIAL_LABELS = 16;
+    private static final int MAX_LABELS = Integer.MAX_VALUE - 8;
+
+    private final ImageTransformer transformer;
+    private final long[] mask;
+    private final int width, height;
+    private final Summary summary;
+    private volatile int[] labels;
+
+    /*
+        Abstraction Function:
+            Represents the labelling of the 8-connected components of the pixels
+            marked in mask, a width-by-height image, labelled with transformer.
+            Component k, for k from 1 to summary.count, has summary.areas[k - 1]
+            pixels, lies in summary.bounds(k), and the columns and rows of its pixels
+            add up to summary.columnSums[k - 1] and summary.rowSums[k - 1]. If labels
+            is not null, the pixel in column col of row row has label
+            labels[row * width + col].
+
+        Representation Invariant:
+            mask has width * height bits and is not changed
+            labels is null, or labels.length == width * height and every entry
+                of labels is between 0 and summary.count
+            the statistics arrays of summary all have summary.count entries
+            every component has at least one pixel and its first pixel, row by row,
+                comes before the first pixel of every component with a higher label
+     */
+
+    /**
+     * The provisional labels of one band, numbered from 0 in the order of their first
+     * run, with the union-find forest that joins them, their statistics and the
+     * provisional labels plus 1 of the pixels of the first and last rows of the band.
+     */
+    static final class Band {
+        int count;
+        int[] firstRow, lastRow;
+        int[] parents = new int[INITIAL_LABELS];
+        int[] areas = new int[INITIAL_LABELS];
+        int[] lefts = new int[INITIAL_LABELS];
+        int[] tops = new int[INITIAL_LABELS];
+        int[] rights = new int[INITIAL_LABELS];
+        int[] bottoms = new int[INITIAL_LABELS];
+        long[] columnSums = new long[INITIAL_LABELS];
+        long[] rowSums = new long[INITIAL_LABELS];
+
+        /**
+         * Adds a provisional label whose first pixel is at column {@code col} of row {@code row}.
+         */
+        int add(int col, int row) {
+            if (count == parents.length) {
+                int length = 2 * count;
+                parents = Arrays.copyOf(parents, length);
+                areas = Arrays.copyOf(areas, length);
+                lefts = Arrays.copyOf(lefts, length);
+                tops = Arrays.copyOf(tops, length);
+                rights = Arrays.copyOf(rights, length);
+                bottoms = Arrays.copyOf(bottoms, length);
+                columnSums = Arrays.copyOf(columnSums, length);
+                rowSums = Arrays.copyOf(rowSums, length);
+            }
+            parents[count] = count;
+            lefts[count] = col;
+            tops[count] = row;
+            rights[count] = col;
+            bottoms[count] = row;
+            return count++;
+        }
+
+        /**
+         * Adds columns {@code first} to {@code last} of row {@code row} to the statistics of {@code label}.
+         */
+        void include(int label, int first, int last, int row) {
+            int length = last - first + 1;
+            areas[label] += length;
+            lefts[label] = Math.min(lefts[label], first);
+            rights[label] = Math.max(rights[label], last);
+            bottoms[label] = row;
+            columnSums[label] += (long) (first + last) * length / 2;
+            rowSums[label] += (long) row * length;
+        }
+
+        /**
+         * Joins the trees of two provisional labels, keeping the lower label as the root.
+         */
+        void union(int a, int b) {
+            a = find(parents, a);
+            b = find(parents, b);
+            parents[Math.max(a, b)] = Math.min(a, b);
+        }
+    }
+
+    /**
+     * Finds the components of the pixels marked in {@code mask}, running the
+     * passes over the bands with the parallelism of {@code transformer}.
+     *
+     * @param transformer runs the passes
+     * @param mask        one bit per pixel, row after row, 64 pixels to a {@code long};
+     *                    it is kept, and must not be changed afterwards
+     * @param width       the width of the image, is positive
+     * @param height      the height of the image, is positive
+     */
+    ConnectedComponents(ImageTransformer transformer, long[] mask, int width, int height) {
+        this.transformer = transformer;
+        this.mask = mask;
+        this.width = width;
+        this.height = height;
+        int bandCount = (height + BAND - 1) / BAND;
+        Band[] bands = new Band[bandCount];
+        transformer.forEachStrip(bandCount, (long) BAND * width, (from, to) -> {
+            for (int b = from; b < to; b++) {
+                bands[b] = labelBand(mask, width, height, b, null, 0);
+            }
+        });
+        summary = new Summary(bands, width, height);
+    }
+
+    /**
+     * Obtain the label of every pixel, labelling the bands again the first time.
+     *
+     * @throws IllegalArgumentException if the image has too many pixels for an array
+     */
+    private int[] labelMap() {
+        int[] map = labels;
+        if (map == null) {
+            if ((long) width * height > MAX_LABELS) {
+                throw new IllegalArgumentException("image is too large for an array of labels");
+            }
+            int[] fresh = new int[width * height];
+            transformer.forEachStrip(summary.offsets.length - 1, (long) BAND * width, (from, to) -> {
+                for (int b = from; b < to; b++) {
+                    int start = b * BAND * width;
+                    labelBand(mask, width, height, b, fresh, start);
+                    resolve(fresh, start, Math.min(height, (b + 1) * BAND) * width, b);
+                }
+            });
+            map = fresh;
+            labels = map;
+        }
+        return map;
+    }
+
+    /**
+     * Replaces the provisional labels plus 1 of band {@code b}, held in {@code labels}
+     * from {@code start} (inclusive) to {@code end} (exclusive), with the labels of
+     * their components.
+     */
+    private void resolve(int[] labels, int start, int end, int b) {
+        int offset = summary.offsets[b] - 1;
+        for (int i = start; i < end; i++) {
+            if (labels[i] != 0) {
+                labels[i] = summary.components[offset + labels[i]];
+            }
+        }
+    }
+
+    /**
+     * The components of the pixels of an image, found by joining the provisional labels
+     * of its bands, with their statistics.
+     */
+    static final class Summary {
+        final int count;
+        // provisional label k of band b is number offsets[b] + k for the whole image
+        final int[] offsets;
+        // the label of the component of every number
+        final int[] components;
+        final long[] areas;
+        final int[] lefts, tops, rights, bottoms;
+        final long[] columnSums, rowSums;
+
+        /**
+         * Joins the provisional labels of {@code bands}, the bands of a
+         * {@code width}-by-{@code height} image in order.
+         */
+        Summary(Band[] bands, int width, int height) {
+            int bandCount = bands.length;
+            offsets = new int[bandCount + 1];
+            for (int b = 0; b < bandCount; b++) {
+                offsets[b + 1] = offsets[b] + bands[b].count;
+            }
+            int[] parents = new int[offsets[bandCount]];
+            for (int b = 0; b < bandCount; b++) {
+                for (int k = 0; k < bands[b].count; k++) {
+                    parents[offsets[b] + k] = offsets[b] + bands[b].parents[k];
+                }
+            }
+            for (int b = 1; b < bandCount; b++) {
+                joinBoundary(parents, offsets, bands, b);
+            }
+
+            // every number is joined to a lower one, so roots are met first and in the order of their first pixel
+            components = new int[parents.length];
+            int found = 0;
+            for (int i = 0; i < parents.length; i++) {
+                components[i] = parents[i] == i ? ++found : components[find(parents, i)];
+            }
+            count = found;
+            areas = new long[count];
+            lefts = new int[count];
+            tops = new int[count];
+            rights = new int[count];
+            bottoms = new int[count];
+            columnSums = new long[count];
+            rowSums = new long[count];
+            Arrays.fill(lefts, width);
+            Arrays.fill(tops, height);
+            for (int b = 0; b < bandCount; b++) {
+                Band band = bands[b];
+                for (int k = 0; k < band.count; k++) {
+                    int c = components[offsets[b] + k] - 1;
+                    areas[c] += band.areas[k];
+                    lefts[c] = Math.min(lefts[c], band.lefts[k]);
+                    tops[c] = Math.min(tops[c], band.tops[k]);
+                    rights[c] = Math.max(rights[c], band.rights[k]);
+                    bottoms[c] = Math.max(bottoms[c], band.bottoms[k]);
+                    columnSums[c] += band.columnSums[k];
+                    rowSums[c] += band.rowSums[k];
+                }
+            }
+        }
+
+        /**
+         * Returns the label of the component with the most pixels, the lowest of equal
+         * areas, or 0 if there are no components.
+         */
+        int largest() {
+            int largest = 0;
+            for (int k = 0; k < count; k++) {
+                if (largest == 0 || areas[k] > areas[largest - 1]) {
+                    largest = k + 1;
+                }
+            }
+            return largest;
+        }
+
+        /**
+         * Returns the smallest rectangle containing component {@code label}, between 1 and count.
+         */
+        Rectangle bounds(int label) {
+            int k = label - 1;
+            return new Rectangle(lefts[k], tops[k], rights[k], bottoms[k]);
+        }
+    }
+
+    /**
+     * Finds the first index from {@code from} (inclusive) to {@code limit} (exclusive)
+     * whose bit in {@code mask} is {@code marked}, or {@code limit} if there is none.
+     */
+    static long next(long[] mask, long from, long limit, boolean marked) {
+        if (from >= limit) {
+            return limit;
+        }
+        long flip = marked ? 0 : -1L;
+        int word = (int) (from >>> 6);
+        long bits = (mask[word] ^ flip) & (-1L << from);
+        while (bits == 0) {
+            word++;
+            if ((long) word * WORD_BITS >= limit) {
+                return limit;
+            }
+            bits = mask[word] ^ flip;
+        }
+        return Math.min(limit, (long) word * WORD_BITS + Long.numberOfTrailingZeros(bits));
+    }
+
+    /**
+     * The first pass over band {@code b}. The runs of the row above are kept as the
+     * columns they start and end at and their provisional labels; a run touches a run
+     * above if they share a column or meet at a corner. The pixels of every run are
+     * given its provisional label plus 1 in the first and last rows kept by the band
+     * and, if {@code labels} is not {@code null}, in {@code labels}, where the pixel in
+     * column {@code col} of row {@code j} of the band is at {@code offset + j * width + col}.
+     */
+    static Band labelBand(long[] mask, int width, int height, int b, int[] labels, int offset) {
+        Band band = new Band();
+        int top = b * BAND;
+        int bottom = Math.min(height, top + BAND);
+        band.firstRow = new int[width];
+        band.lastRow = bottom - top == 1 ? band.firstRow : new int[width];
+        int capacity = width / 2 + 1;
+        int[] aboveFirsts = new int[capacity];
+        int[] aboveLasts = new int[capacity];
+        int[] aboveLabels = new int[capacity];
+        int[] firsts = new int[capacity];
+        int[] lasts = new int[capacity];
+        int[] runLabels = new int[capacity];
+        int aboveRuns = 0;
+        for (int row = top; row < bottom; row++) {
+            long start = (long) row * width;
+            long end = start + width;
+            int runs = 0;
+            int j = 0;
+            for (long s = next(mask, start, end, true); s < end; s = next(mask, s, end, true)) {
+                long e = next(mask, s, end, false);
+                int first = (int) (s - start);
+                int last = (int) (e - 1 - start);
+                s = e;
+                while (j < aboveRuns && aboveLasts[j] < first - 1) {
+                    j++;
+                }
+                int label = -1;
+                // the last run touched may touch the next run as well, so j stays on it
+                for (int k = j; k < aboveRuns && aboveFirsts[k] <= last + 1; k++) {
+                    if (label < 0) {
+                        label = aboveLabels[k];
+                    } else {
+                        band.union(label, aboveLabels[k]);
+                    }
+                    j = k;
+                }
+                if (label < 0) {
+                    label = band.add(first, row);
+                }
+                band.include(label, first, last, row);
+                if (labels != null) {
+                    int at = offset + (row - top) * width;
+                    Arrays.fill(labels, at + first, at + last + 1, label + 1);
+                }
+                if (row == top) {
+                    Arrays.fill(band.firstRow, first, last + 1, label + 1);
+                }
+                if (row == bottom - 1) {
+                    Arrays.fill(band.lastRow, first, last + 1, label + 1);
+                }
+                firsts[runs] = first;
+                lasts[runs] = last;
+                runLabels[runs] = label;
+                runs++;
+            }
+            int[] swap = aboveFirsts;
+            aboveFirsts = firsts;
+            firsts = swap;
+            swap = aboveLasts;
+            aboveLasts = lasts;
+            lasts = swap;
+            swap = aboveLabels;
+            aboveLabels = runLabels;
+            runLabels = swap;
+            aboveRuns = runs;
+        }
+        return band;
+    }
+
+    /**
+     * Joins the provisional labels of the first row of band {@code b} with those of
+     * the pixels that touch them in the last row of band {@code b - 1}.
+     */
+    private static void joinBoundary(int[] parents, int[] offsets, Band[] bands, int b) {
+        int[] below = bands[b].firstRow;
+        int[] above = bands[b - 1].lastRow;
+        int width = below.length;
+        for (int col = 0; col < width; col++) {
+            if (below[col] == 0) {
+                continue;
+            }
+            int label = offsets[b] + below[col] - 1;
+            for (int c = Math.max(col - 1, 0); c <= Math.min(col + 1, width - 1); c++) {
+                if (above[c] != 0) {
+                    int r = find(parents, label);
+                    int a = find(parents, offsets[b - 1] + above[c] - 1);
+                    parents[Math.max(a, r)] = Math.min(a, r);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the root of the tree of {@code i}, halving the path to it.
+     */
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width of the image (in pixels)
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height of the image (in pixels)
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Returns the number of components.
+     *
+     * @return the number of components, which are labelled 1 to this number
+     */
+    public int count() {
+        return summary.count;
+    }
+
+    /**
+     * Returns the label of a pixel.
+     *
+     * @param col the column of the pixel
+     * @param row the row of the pixel
+     * @return the label of the component of the pixel, or 0 if the pixel is in no component
+     * @throws IllegalArgumentException if the pixel is not within the image
+     */
+    public int label(int col, int row) {
+        if (col < 0 || col >= width || row < 0 || row >= height) {
+            throw new IllegalArgumentException("pixel is not within the image");
+        }
+        if ((long) width * height > MAX_LABELS) {
+            // too many pixels for an array: label just the band of the pixel
+            int b = row / BAND;
+            int[] band = new int[(Math.min(height, (b + 1) * BAND) - b * BAND) * width];
+            labelBand(mask, width, height, b, band, 0);
+            int i = (row - b * BAND) * width + col;
+            resolve(band, i, i + 1, b);
+            return band[i];
+        }
+        return labelMap()[row * width + col];
+    }
+
+    /**
+     * Returns the labels of all the pixels.
+     *
+     * @return a new array with the label of the pixel in column {@code col} of row
+     *         {@code row} at index {@code row * width() + col}
+     * @throws IllegalArgumentException if the image has too many pixels for an array
+     */
+    public int[] labels() {
+        return labelMap().clone();
+    }
+
+    /**
+     * Returns the number of pixels in a component.
+     *
+     * @param label the label of the component, between 1 and {@link #count()}
+     * @return the number of pixels in the component
+     * @throws IllegalArgumentException if {@code label} is not the label of a component
+     */
+    public long area(int label) {
+        return summary.areas[index(label)];
+    }
+
+    /**
+     * Returns the smallest rectangle containing a component.
+     *
+     * @param label the label of the component, between 1 and {@link #count()}
+     * @return the smallest rectangle containing the component, with columns as x
+     *         coordinates and rows as y coordinates
+     * @throws IllegalArgumentException if {@code label} is not the label of a component
+     */
+    public Rectangle bounds(int label) {
+        return summary.bounds(index(label) + 1);
+    }
+
+    /**
+     * Returns the centroid of a component, the mean position of its pixels.
+     *
+     * @param label the label of the component, between 1 and {@link #count()}
+     * @return the mean column (as x) and mean row (as y) of the pixels of the component
+     * @throws IllegalArgumentException if {@code label} is not the label of a component
+     */
+    public Point2D.Double centroid(int label) {
+        int k = index(label);
+        return new Point2D.Double((double) summary.columnSums[k] / summary.areas[k],
+            (double) summary.rowSums[k] / summary.areas[k]);
+    }
+
+    /**
+     * Returns the component with the most pixels. Of components of the same area,
+     * the one with the lowest label is chosen.
+     *
+     * @return the label of the largest component, or 0 if there are no components
+     */
+    public int largest() {
+        return summary.largest();
+    }
+
+    private int index(int label) {
+        if (label < 1 || label > summary.count) {
+            throw new IllegalArgumentException("no component has label " + label);
+        }
+        return label - 1;
+    }
+}
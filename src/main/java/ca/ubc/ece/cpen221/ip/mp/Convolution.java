@@ -0,0 +1,239 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import java.util.Arrays;
+
+/**
+ * Computes the rows of the convolution of an image with a {@link ConvolutionKernel},
+ * for {@link ImageTransformer#convolve(ConvolutionKernel, BorderPolicy)} and
+ * {@link ImagePipeline#convolve(ConvolutionKernel, BorderPolicy)}.
+ * <p>
+ * A convolution keeps a window of the input rows that the next output row needs,
+ * one row per row of the kernel, and moves it down one row at a time as consecutive
+ * rows are requested. Input rows are split into their colour components and padded
+ * on both sides according to the {@link BorderPolicy} once, when they enter the window.
+ * For a separable kernel the window holds the rows after the horizontal pass, so each
+ * input row is filtered horizontally only once. All arithmetic is on {@code long}
+ * fixed-point values; no memory is allocated per row.
+ */
+final class Convolution {
+    private static final int COMPONENTS = 3;
+    private static final int[] SHIFTS = {16, 8, 0};
+    private static final int OPAQUE = 0xFF000000;
+    private static final int MAX_COLOUR_VALUE = 255;
+
+    /**
+     * Reads the rows of the image being convolved.
+     */
+    interface RowReader {
+        /**
+         * Copy row {@code row}, between 0 and the height of the image minus 1,
+         * into the first {@code width} positions of {@code dst}.
+         */
+        void read(int row, int[] dst);
+    }
+
+    private final ConvolutionKernel kernel;
+    private final BorderPolicy border;
+    private final RowReader input;
+    private final int width, height, radiusX, radiusY, paddedWidth;
+    private final int[] columnMap;
+    private final int[] pixels;
+    private final long[] padded, sums;
+    private final long[][] window, unfiltered;
+    private int last = Integer.MIN_VALUE;
+
+    /*
+        Abstraction Function:
+            Computes the rows of the convolution of the image read by input with kernel.
+            If last is not Integer.MIN_VALUE, window[k] holds the input row of position
+            last - radiusY + k (mapped by border; all 0 if border maps it to black),
+            after the horizontal pass if kernel is separable, with component c of
+            column x at index c * width + x, or else padded by radiusX columns on both
+            sides, with component c of column x at index c * paddedWidth + radiusX + x.
+            If kernel has an identity term, unfiltered[k] holds the same row before the
+            horizontal pass, and unfiltered is null otherwise.
+
+        Representation Invariant:
+            window.length == 2 * radiusY + 1
+            columnMap.length == paddedWidth == width + 2 * radiusX
+     */
+
+    Convolution(ConvolutionKernel kernel, BorderPolicy border, int width, int height, RowReader input) {
+        this.kernel = kernel;
+        this.border = border;
+        this.input = input;
+        this.width = width;
+        this.height = height;
+        radiusX = kernel.radiusX();
+        radiusY = kernel.radiusY();
+        paddedWidth = width + 2 * radiusX;
+        columnMap = new int[paddedWidth];
+        for (int i = 0; i < paddedWidth; i++) {
+            columnMap[i] = border.map(i - radiusX, width);
+        }
+        pixels = new int[width];
+        padded = new long[COMPONENTS * paddedWidth];
+        sums = new long[width];
+        int rowLength = COMPONENTS * (kernel.isSeparable() ? width : paddedWidth);
+        window = new long[2 * radiusY + 1][rowLength];
+        unfiltered = kernel.identity() != 0 ? new long[2 * radiusY + 1][COMPONENTS * width] : null;
+    }
+
+    /**
+     * Computes row {@code row} of the convolution. Rows are computed fastest when
+     * they are requested in increasing order, one after the other.
+     *
+     * @param row the row, between 0 and the height of the image minus 1
+     * @param out receives the {@code width} pixels of the row
+     */
+    void row(int row, int[] out) {
+        if (last != Integer.MIN_VALUE && row == last + 1) {
+            rotate(window);
+            if (unfiltered != null) {
+                rotate(unfiltered);
+            }
+            load(row + radiusY, window.length - 1);
+        } else if (row != last) {
+            for (int k = 0; k < window.length; k++) {
+                load(row - radiusY + k, k);
+            }
+        }
+        last = row;
+        if (kernel.isSeparable()) {
+            verticalPass(out);
+        } else {
+            convolve2d(out);
+        }
+    }
+
+    private static void rotate(long[][] rows) {
+        long[] oldest = rows[0];
+        System.arraycopy(rows, 1, rows, 0, rows.length - 1);
+        rows[rows.length - 1] = oldest;
+    }
+
+    /**
+     * Loads the input row at position {@code position} into row {@code k} of the window.
+     */
+    private void load(int position, int k) {
+        long[] dst = window[k];
+        int source = border.map(position, height);
+        if (source < 0) {
+            Arrays.fill(dst, 0);
+            if (unfiltered != null) {
+                Arrays.fill(unfiltered[k], 0);
+            }
+            return;
+        }
+        input.read(source, pixels);
+        for (int c = 0; c < COMPONENTS; c++) {
+            int shift = SHIFTS[c];
+            int start = c * paddedWidth;
+            for (int i = 0; i < paddedWidth; i++) {
+                int col = columnMap[i];
+                padded[start + i] = col < 0 ? 0 : (pixels[col] >> shift) & 0xFF;
+            }
+        }
+        if (unfiltered != null) {
+            for (int c = 0; c < COMPONENTS; c++) {
+                System.arraycopy(padded, c * paddedWidth + radiusX, unfiltered[k], c * width, width);
+            }
+        }
+        if (kernel.isSeparable()) {
+            horizontalPass(dst);
+        } else {
+            System.arraycopy(padded, 0, dst, 0, padded.length);
+        }
+    }
+
+    /**
+     * Filters the components in {@code padded} along the row into {@code dst}, keeping
+     * {@code FRACTION_BITS - PASS_BITS} fractional bits.
+     */
+    private void horizontalPass(long[] dst) {
+        int length = 2 * radiusX + 1;
+        int drop = ConvolutionKernel.PASS_BITS - (ConvolutionKernel.FRACTION_BITS - ConvolutionKernel.PASS_BITS);
+        long half = drop > 0 ? 1L << (drop - 1) : 0;
+        for (int c = 0; c < COMPONENTS; c++) {
+            int start = c * paddedWidth;
+            int outStart = c * width;
+            Arrays.fill(sums, half);
+            for (int i = 0; i < length; i++) {
+                long weight = kernel.horizontal(i);
+                int from = start + i;
+                for (int x = 0; x < width; x++) {
+                    sums[x] += weight * padded[from + x];
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                dst[outStart + x] = sums[x] >> drop;
+            }
+        }
+    }
+
+    /**
+     * Filters the window along the columns into {@code out}, adding the identity term
+     * of the kernel for the centre row.
+     */
+    private void verticalPass(int[] out) {
+        long identity = kernel.identity();
+        long[] centre = unfiltered == null ? null : unfiltered[radiusY];
+        Arrays.fill(out, 0, width, OPAQUE);
+        for (int c = 0; c < COMPONENTS; c++) {
+            int start = c * width;
+            int shift = SHIFTS[c];
+            if (centre == null) {
+                Arrays.fill(sums, 0);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    sums[x] = identity * centre[start + x];
+                }
+            }
+            for (int k = 0; k < window.length; k++) {
+                long weight = kernel.vertical(k);
+                long[] row = window[k];
+                for (int x = 0; x < width; x++) {
+                    sums[x] += weight * row[start + x];
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                out[x] |= round(sums[x]) << shift;
+            }
+        }
+    }
+
+    /**
+     * Convolves the padded rows of the window with a kernel that is not separable.
+     */
+    private void convolve2d(int[] out) {
+        int length = 2 * radiusX + 1;
+        Arrays.fill(out, 0, width, OPAQUE);
+        for (int c = 0; c < COMPONENTS; c++) {
+            int start = c * paddedWidth;
+            int shift = SHIFTS[c];
+            Arrays.fill(sums, 0);
+            for (int k = 0; k < window.length; k++) {
+                long[] row = window[k];
+                for (int i = 0; i < length; i++) {
+                    long weight = kernel.weight(k, i);
+                    int from = start + i;
+                    for (int x = 0; x < width; x++) {
+                        sums[x] += weight * row[from + x];
+                    }
+                }
+            }
+            for (int x = 0; x < width; x++) {
+                out[x] |= round(sums[x]) << shift;
+            }
+        }
+    }
+
+    /**
+     * Rounds a sum with {@code FRACTION_BITS} fractional bits to the nearest
+     * component value, clamped to 0 to 255.
+     */
+    private static int round(long sum) {
+        long value = (sum + (1L << (ConvolutionKernel.FRACTION_BITS - 1))) >> ConvolutionKernel.FRACTION_BITS;
+        return (int) Math.max(0, Math.min(MAX_COLOUR_VALUE, value));
+    }
+}
@@ -0,0 +1,331 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import java.util.Arrays;
+
+/**
+ * This datatype represents an <strong>immutable</strong> convolution kernel for
+ * {@link ImageTransformer#convolve(ConvolutionKernel, BorderPolicy)}: a grid of weights
+ * with an odd number of rows and columns, centred on the pixel being computed. Every
+ * colour component of a pixel becomes the weighted sum of that component over the
+ * window, rounded to the nearest integer and clamped to 0 to 255.
+ * <p>
+ * The weights are held in fixed point with {@value #FRACTION_BITS} fractional bits
+ * and applied with integer arithmetic. A kernel whose grid is the product of a column
+ * and a row of weights, such as {@link #gaussian(double)} and {@link #box(int)}, is
+ * separable: it is applied as a horizontal pass followed by a vertical pass, which
+ * takes {@code width + height} multiplications per component instead of
+ * {@code width * height}. {@link #of(double[][])} finds out by itself whether a grid is
+ * separable. {@link #unsharpMask(double, double)} is a separable kernel plus a multiple
+ * of the pixel itself, and is applied as fast as a separable kernel.
+ */
+public final class ConvolutionKernel {
+    /**
+     * The number of fractional bits of the weights of a kernel.
+     */
+    public static final int FRACTION_BITS = 20;
+
+    /**
+     * The number of fractional bits of the weights of each pass of a separable kernel;
+     * the result of the horizontal pass keeps {@code FRACTION_BITS - PASS_BITS} of them.
+     */
+    static final int PASS_BITS = 14;
+
+    private static final double MAX_TOTAL_WEIGHT = 1 << 10;
+    private static final double SEPARABLE_TOLERANCE = 1e-12;
+
+    private final int radiusX, radiusY;
+    private final long[] horizontal, vertical, weights;
+    private final long identity;
+
+    /*
+        Abstraction Function:
+            If weights is null, represents the separable kernel whose weight at
+            column offset dx and row offset dy is
+                horizontal[dx + radiusX] * vertical[dy + radiusY] / 2^(2 * PASS_BITS),
+            plus identity / 2^FRACTION_BITS at offset (0, 0).
+            Otherwise represents the kernel whose weight at (dx, dy) is
+                weights[(dy + radiusY) * (2 * radiusX + 1) + dx + radiusX] / 2^FRACTION_BITS.
+
+        Representation Invariant:
+            radiusX >= 0 and radiusY >= 0
+            if weights is null:
+                horizontal.length == 2 * radiusX + 1
+                vertical.length == 2 * radiusY + 1
+            else:
+                weights.length == (2 * radiusX + 1) * (2 * radiusY + 1)
+                horizontal, vertical are null and identity == 0
+     */
+
+    private ConvolutionKernel(int radiusX, int radiusY, long[] horizontal, long[] vertical,
+                              long identity, long[] weights) {
+        this.radiusX = radiusX;
+        this.radiusY = radiusY;
+        this.horizontal = horizontal;
+        this.vertical = vertical;
+        this.identity = identity;
+        this.weights = weights;
+    }
+
+    /**
+     * Obtain the kernel with the given weights. The kernel is applied as a separable
+     * kernel if the weights are the product of a column and a row.
+     *
+     * @param weights the weights, one array per row; the number of rows and the number
+     *                of columns are odd, and the centre weight is for the pixel itself
+     * @return the kernel with these weights
+     * @throws IllegalArgumentException if {@code weights} is {@code null}, has an even number
+     *                                  of rows or columns, has rows of different lengths,
+     *                                  or has weights that are not finite or whose
+     *                                  absolute values add up to more than 1024
+     */
+    public static ConvolutionKernel of(double[][] weights) {
+        if (weights == null || weights.length % 2 == 0 || weights[0] == null || weights[0].length % 2 == 0) {
+            throw new IllegalArgumentException("kernel must have an odd number of rows and columns");
+        }
+        int columns = weights[0].length;
+        double total = 0;
+        int pivotRow = 0;
+        int pivotCol = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] == null || weights[i].length != columns) {
+                throw new IllegalArgumentException("kernel rows must all have the same length");
+            }
+            for (int j = 0; j < columns; j++) {
+                validateWeight(weights[i][j]);
+                total += Math.abs(weights[i][j]);
+                if (Math.abs(weights[i][j]) > Math.abs(weights[pivotRow][pivotCol])) {
+                    pivotRow = i;
+                    pivotCol = j;
+                }
+            }
+        }
+        validateTotal(total);
+
+        // the grid is separable iff it is the product of its pivot column and pivot row
+        double pivot = weights[pivotRow][pivotCol];
+        double[] row = weights[pivotRow];
+        double[] column = new double[weights.length];
+        boolean separable = pivot != 0;
+        for (int i = 0; i < weights.length && separable; i++) {
+            column[i] = weights[i][pivotCol] / pivot;
+            for (int j = 0; j < columns; j++) {
+                if (Math.abs(column[i] * row[j] - weights[i][j]) > SEPARABLE_TOLERANCE * Math.abs(pivot)) {
+                    separable = false;
+                }
+            }
+        }
+        if (separable) {
+            return separable(row, column);
+        }
+
+        double[] flat = new double[weights.length * columns];
+        for (int i = 0; i < weights.length; i++) {
+            System.arraycopy(weights[i], 0, flat, i * columns, columns);
+        }
+        return new ConvolutionKernel(columns / 2, weights.length / 2, null, null, 0,
+            toFixed(flat, FRACTION_BITS));
+    }
+
+    /**
+     * Obtain the separable kernel whose weight at column offset {@code dx} and row offset
+     * {@code dy} is {@code horizontal[dx + r] * vertical[dy + s]}, where {@code r} and
+     * {@code s} are the radii of the arrays.
+     *
+     * @param horizontal the weights along a row, an odd number of them
+     * @param vertical   the weights along a column, an odd number of them
+     * @return the separable kernel
+     * @throws IllegalArgumentException if an array is {@code null}, has an even number of
+     *                                  weights, or has weights that are not finite or whose
+     *                                  absolute values add up to more than 1024
+     */
+    public static ConvolutionKernel separable(double[] horizontal, double[] vertical) {
+        validateLine(horizontal);
+        validateLine(vertical);
+        return new ConvolutionKernel(horizontal.length / 2, vertical.length / 2,
+            toFixed(horizontal, PASS_BITS), toFixed(vertical, PASS_BITS), 0, null);
+    }
+
+    /**
+     * Obtain the Gaussian blur with standard deviation {@code sigma}, cut off at
+     * {@code ceil(3 * sigma)} pixels from the centre and normalised so that its
+     * weights add up to 1.
+     *
+     * @param sigma the standard deviation, in pixels, is positive and finite
+     * @return the Gaussian blur
+     * @throws IllegalArgumentException if {@code sigma} is not positive and finite
+     */
+    public static ConvolutionKernel gaussian(double sigma) {
+        double[] line = gaussianLine(sigma);
+        return separable(line, line);
+    }
+
+    private static double[] gaussianLine(double sigma) {
+        if (!(sigma > 0) || Double.isInfinite(sigma)) {
+            throw new IllegalArgumentException("sigma must be positive: " + sigma);
+        }
+        int radius = (int) Math.ceil(3 * sigma);
+        double[] line = new double[2 * radius + 1];
+        double sum = 0;
+        for (int i = -radius; i <= radius; i++) {
+            line[i + radius] = Math.exp(-(double) i * i / (2 * sigma * sigma));
+            sum += line[i + radius];
+        }
+        for (int i = 0; i < line.length; i++) {
+            line[i] /= sum;
+        }
+        return line;
+    }
+
+    /**
+     * Obtain the box blur over {@code 2 * radius + 1} by {@code 2 * radius + 1} pixels,
+     * whose weights are all equal and add up to 1.
+     *
+     * @param radius the radius of the box, is not negative
+     * @return the box blur
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public static ConvolutionKernel box(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative");
+        }
+        double[] line = new double[2 * radius + 1];
+        Arrays.fill(line, 1.0 / line.length);
+        return separable(line, line);
+    }
+
+    /**
+     * Obtain the unsharp mask that sharpens an image by adding {@code amount} times the
+     * difference between the image and its Gaussian blur with standard deviation
+     * {@code sigma}: the kernel is {@code (1 + amount)} times the pixel itself minus
+     * {@code amount} times {@link #gaussian(double)}.
+     *
+     * @param sigma  the standard deviation of the blur, is positive and finite
+     * @param amount the strength of the sharpening, between 0 and 1024
+     * @return the unsharp mask
+     * @throws IllegalArgumentException if {@code sigma} is not positive and finite, or
+     *                                  {@code amount} is not between 0 and 1024
+     */
+    public static ConvolutionKernel unsharpMask(double sigma, double amount) {
+        if (!(amount >= 0) || Double.isInfinite(amount)) {
+            throw new IllegalArgumentException("amount must not be negative: " + amount);
+        }
+        double[] line = gaussianLine(sigma);
+        double[] negated = new double[line.length];
+        for (int i = 0; i < line.length; i++) {
+            negated[i] = -amount * line[i];
+        }
+        validateLine(negated);
+        return new ConvolutionKernel(line.length / 2, line.length / 2, toFixed(line, PASS_BITS),
+            toFixed(negated, PASS_BITS), Math.round((1 + amount) * (1L << FRACTION_BITS)), null);
+    }
+
+    private static void validateLine(double[] line) {
+        if (line == null || line.length % 2 == 0) {
+            throw new IllegalArgumentException("kernel must have an odd number of weights");
+        }
+        double total = 0;
+        for (double weight : line) {
+            validateWeight(weight);
+            total += Math.abs(weight);
+        }
+        validateTotal(total);
+    }
+
+    private static void validateWeight(double weight) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+            throw new IllegalArgumentException("kernel weights must be finite: " + weight);
+        }
+    }
+
+    private static void validateTotal(double total) {
+        if (total > MAX_TOTAL_WEIGHT) {
+            throw new IllegalArgumentException("kernel weights are too large: " + total);
+        }
+    }
+
+    /**
+     * Converts weights to fixed point with {@code bits} fractional bits. The centre weight
+     * absorbs the rounding errors, so that the fixed-point weights add up to the rounded
+     * sum of the weights and a kernel that keeps the brightness still keeps it.
+     */
+    private static long[] toFixed(double[] weights, int bits) {
+        double scale = 1L << bits;
+        long[] fixed = new long[weights.length];
+        double sum = 0;
+        long fixedSum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            fixed[i] = Math.round(weights[i] * scale);
+            sum += weights[i];
+            fixedSum += fixed[i];
+        }
+        fixed[weights.length / 2] += Math.round(sum * scale) - fixedSum;
+        return fixed;
+    }
+
+    /**
+     * The number of columns on each side of the centre.
+     */
+    int radiusX() {
+        return radiusX;
+    }
+
+    /**
+     * The number of rows on each side of the centre.
+     */
+    int radiusY() {
+        return radiusY;
+    }
+
+    /**
+     * Checks if this kernel is applied as two passes.
+     */
+    boolean isSeparable() {
+        return weights == null;
+    }
+
+    /**
+     * The weights of the horizontal pass, with {@link #PASS_BITS} fractional bits.
+     */
+    long horizontal(int i) {
+        return horizontal[i];
+    }
+
+    /**
+     * The weights of the vertical pass, with {@link #PASS_BITS} fractional bits.
+     */
+    long vertical(int i) {
+        return vertical[i];
+    }
+
+    /**
+     * The weight added for the pixel itself, with {@link #FRACTION_BITS} fractional bits.
+     */
+    long identity() {
+        return identity;
+    }
+
+    /**
+     * The weight at row {@code i} and column {@code j} of a kernel that is not separable,
+     * with {@link #FRACTION_BITS} fractional bits.
+     */
+    long weight(int i, int j) {
+        return weights[i * (2 * radiusX + 1) + j];
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof ConvolutionKernel)) {
+            return false;
+        }
+        ConvolutionKernel that = (ConvolutionKernel) other;
+        return radiusX == that.radiusX && radiusY == that.radiusY && identity == that.identity
+            && Arrays.equals(horizontal, that.horizontal) && Arrays.equals(vertical, that.vertical)
+            && Arrays.equals(weights, that.weights);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * Arrays.hashCode(horizontal) + Arrays.hashCode(vertical))
+            + Arrays.hashCode(weights)) + Long.hashCode(identity);
+    }
+}
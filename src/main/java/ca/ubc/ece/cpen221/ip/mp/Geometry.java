@@ -0,0 +1,102 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+/**
+ * Kernels for the geometric transforms of {@link ImageTransformer} that move
+ * pixels without changing them: flips, quarter turns and the transpose.
+ * <p>
+ * Flips and the half turn copy whole rows, reversing them where needed. The
+ * transpose and the quarter turns turn rows into columns, which read or write
+ * one pixel per row of an image at a time and would miss the cache on every pixel
+ * of a large image. They are computed one band of {@link #BAND} rows at a time
+ * instead: the band is read with one bulk copy, transposed in {@link #TILE} by
+ * {@code TILE} tiles that fit in the L1 cache, and written with one bulk copy as a
+ * band of columns of the result.
+ */
+final class Geometry {
+    /**
+     * The number of rows of the image transposed together.
+     */
+    static final int BAND = 64;
+
+    private static final int TILE = 32;
+
+    private Geometry() {
+    }
+
+    /**
+     * Copies rows {@code from} (inclusive) to {@code to} (exclusive) of the vertical
+     * flip of {@code source} into {@code target}, reversing every row if {@code mirror}
+     * is true, which makes the half turn.
+     *
+     * @param source the image to flip
+     * @param target receives the flipped rows, has the dimensions of {@code source}
+     * @param mirror true to reverse every row as well
+     * @param from   the first row of {@code target} to compute
+     * @param to     the row after the last row of {@code target} to compute
+     */
+    static void flipRows(Image source, Image target, boolean mirror, int from, int to) {
+        int width = source.width();
+        int height = source.height();
+        int[] pixels = new int[width];
+        for (int row = from; row < to; row++) {
+            source.getRow(height - 1 - row, pixels, 0);
+            if (mirror) {
+                reverse(pixels, 0, width);
+            }
+            target.setRow(row, pixels, 0);
+        }
+    }
+
+    private static void reverse(int[] pixels, int start, int end) {
+        for (int i = start, j = end - 1; i < j; i++, j--) {
+            int pixel = pixels[i];
+            pixels[i] = pixels[j];
+            pixels[j] = pixel;
+        }
+    }
+
+    /**
+     * Computes bands {@code from} (inclusive) to {@code to} (exclusive) of the transpose
+     * of {@code source}, optionally flipped. Band {@code b} holds rows {@code b * BAND}
+     * to {@code (b + 1) * BAND - 1} of {@code source}, which become columns of {@code target}:
+     * the pixel in column {@code c} and row {@code r} of {@code source} goes to row
+     * {@code c} (or {@code width - 1 - c} if {@code reverseColumns}) and column {@code r}
+     * (or {@code height - 1 - r} if {@code reverseRows}) of {@code target}.
+     *
+     * @param source         the image to transpose
+     * @param target         receives the bands, is {@code source.height()} by {@code source.width()}
+     * @param reverseRows    true to reverse the order of the rows of {@code source}
+     * @param reverseColumns true to reverse the order of the columns of {@code source}
+     * @param from           the first band to compute
+     * @param to             the band after the last band to compute
+     */
+    static void transposeBands(Image source, Image target, boolean reverseRows, boolean reverseColumns,
+                               int from, int to) {
+        int width = source.width();
+        int height = source.height();
+        int[] band = new int[BAND * width];
+        int[] columns = new int[width * BAND];
+        for (int b = from; b < to; b++) {
+            int first = b * BAND;
+            int rows = Math.min(BAND, height - first);
+            source.getRGB(0, first, width, rows, band, 0, width);
+            // the band becomes rows-wide columns: columns[c * rows + i] = band[i * width + c]
+            for (int tileRow = 0; tileRow < rows; tileRow += TILE) {
+                int tileRows = Math.min(TILE, rows - tileRow);
+                for (int tileCol = 0; tileCol < width; tileCol += TILE) {
+                    int tileCols = Math.min(TILE, width - tileCol);
+                    for (int c = tileCol; c < tileCol + tileCols; c++) {
+                        int out = (reverseColumns ? width - 1 - c : c) * rows;
+                        for (int i = tileRow; i < tileRow + tileRows; i++) {
+                            columns[out + (reverseRows ? rows - 1 - i : i)] = band[i * width + c];
+                        }
+                    }
+                }
+            }
+            int col = reverseRows ? height - first - rows : first;
+            target.setRGB(col, 0, rows, width, columns, 0, rows);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * This datatype represents a <strong>mutable</strong> green screen for a sequence of
+ * frames, such as the frames of a shot taken from a fixed camera: every frame becomes
+ * the result of {@link ImageTransformer#greenScreen(ChromaKey, Compositor)} with the same
+ * key and compositor, but the work done for the previous frame is reused for the parts
+ * of the next frame that did not change.
+ * <p>
+ * The frames are split into bands of {@link ConnectedComponents#BAND} rows. A band of
+ * a frame is keyed and labelled again only if one of its rows differs from the previous
+ * frame; the key mask and the provisional labels of the other bands are kept, and only
+ * the few labels of every band are joined again to find the largest area. If the
+ * rectangle containing it is unchanged, the previous result is reused and only the
+ * changed bands, and the rows within the soft edge of the compositor of them, are
+ * composited again. The background is laid out over the frame once for every size
+ * of frame. Apart from the comparison of each frame with the previous one, the
+ * work per frame therefore grows with the changed rows rather than with the frame.
+ */
+public final class GreenScreenSequence {
+    private static final int BAND = ConnectedComponents.BAND;
+
+    private final ChromaKey key;
+    private final Compositor compositor;
+    private final int parallelism;
+
+    private int width, height;
+    private Image frame, output, layout;
+    private long[] mask;
+    private ConnectedComponents.Band[] bands;
+    private Rectangle region;
+
+    /*
+        Abstraction Function:
+            Represents the green screen of frames with key and compositor, with up to
+            parallelism threads, whose last frame is frame (none if frame is null) and
+            whose result for it is output.
+
+        Representation Invariant:
+            key, compositor are not null and parallelism > 0
+            if frame is not null:
+                frame, output and layout are width-by-height images that are not
+                    shared with the caller
+                layout is compositor.layout(width, height)
+                mask keys frame with key, and bands[b] is the labelling of band b of mask
+                region is the smallest rectangle containing the largest component of
+                    mask, or null if mask has no pixels
+                output is the result of greenScreen(key, compositor) for frame
+     */
+
+    /**
+     * Creates a green screen for a sequence of frames that runs on the calling thread.
+     *
+     * @param key        the key of the screen, is not null
+     * @param compositor how to composite the background, is not null
+     * @throws IllegalArgumentException if {@code key} or {@code compositor} is {@code null}
+     */
+    public GreenScreenSequence(ChromaKey key, Compositor compositor) {
+        this(key, compositor, 1);
+    }
+
+    /**
+     * Creates a green screen for a sequence of frames that processes every frame with
+     * up to {@code parallelism} threads.
+     *
+     * @param key         the key of the screen, is not null
+     * @param compositor  how to composite the background, is not null
+     * @param parallelism the number of threads to use, is positive
+     * @throws IllegalArgumentException if {@code key} or {@code compositor} is {@code null}
+     *                                  or {@code parallelism} is not positive
+     */
+    public GreenScreenSequence(ChromaKey key, Compositor compositor, int parallelism) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
+        }
+        if (compositor == null) {
+            throw new IllegalArgumentException("compositor is null");
+        }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive");
+        }
+        this.key = key;
+        this.compositor = compositor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Green screens the frames of a stream, in order.
+     *
+     * @param frames the frames, which are not null; the stream is processed sequentially
+     * @return the stream of the results of {@link #next(Image)} for the frames, which calls
+     *         {@link #next(Image)} as its elements are consumed
+     */
+    public Stream<Image> process(Stream<Image> frames) {
+        return frames.sequential().map(this::next);
+    }
+
+    /**
+     * Green screens the next frame of the sequence. A frame of a different size from
+     * the previous frame starts the sequence again.
+     *
+     * @param nextFrame the frame, is not null and is not changed
+     * @return the same image as
+     *         {@code new ImageTransformer(nextFrame).greenScreen(key, compositor)}
+     * @throws IllegalArgumentException if {@code nextFrame} is {@code null}
+     */
+    public Image next(Image nextFrame) {
+        if (nextFrame == null) {
+            throw new IllegalArgumentException("frame is null");
+        }
+        ImageTransformer transformer = new ImageTransformer(nextFrame, parallelism);
+        int[] changed = changedBands(transformer, nextFrame);
+        transformer.forEachStrip(changed.length, (long) BAND * width, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                int b = changed[i];
+                key.mask(nextFrame, mask, b * BAND, Math.min(height, (b + 1) * BAND));
+                bands[b] = ConnectedComponents.labelBand(mask, width, height, b, null, 0);
+            }
+        });
+        ConnectedComponents.Summary summary = new ConnectedComponents.Summary(bands, width, height);
+        int largest = summary.largest();
+        Rectangle nextRegion = largest == 0 ? null : summary.bounds(largest);
+
+        Image result;
+        if (output != null && sameRegion(region, nextRegion)) {
+            result = new Image(output);
+            if (changed.length > 0) {
+                // duplicate the pixels shared with the previous result on this thread, not in every strip
+                result.ensureUnshared();
+                recomposite(transformer, nextFrame, result, nextRegion, changed);
+            }
+        } else {
+            result = new Image(nextFrame);
+            if (nextRegion != null) {
+                result.ensureUnshared();
+                int rows = nextRegion.yBottomRight - nextRegion.yTopLeft + 1;
+                int columns = nextRegion.xBottomRight - nextRegion.xTopLeft + 1;
+                transformer.forEachStrip(rows, columns,
+                    (from, to) -> compositor.composite(result, mask, nextRegion, from, to, layout));
+            }
+        }
+        frame = new Image(nextFrame);
+        output = result;
+        region = nextRegion;
+        return new Image(result);
+    }
+
+    /**
+     * Finds the bands of {@code nextFrame} that differ from the previous frame,
+     * starting the sequence again if its size differs.
+     *
+     * @return the indices of the changed bands, in increasing order
+     */
+    private int[] changedBands(ImageTransformer transformer, Image nextFrame) {
+        int bandCount = (nextFrame.height() + BAND - 1) / BAND;
+        if (frame == null || nextFrame.width() != width || nextFrame.height() != height) {
+            width = nextFrame.width();
+            height = nextFrame.height();
+            mask = new long[(int) (((long) width * height + Long.SIZE - 1) / Long.SIZE)];
+            bands = new ConnectedComponents.Band[bandCount];
+            layout = compositor.layout(width, height);
+            frame = null;
+            output = null;
+            region = null;
+            int[] all = new int[bandCount];
+            Arrays.setAll(all, b -> b);
+            return all;
+        }
+        boolean[] changed = new boolean[bandCount];
+        Image previous = frame;
+        transformer.forEachStrip(bandCount, (long) BAND * width, (from, to) -> {
+            int[] pixels = new int[width];
+            int[] previousPixels = new int[width];
+            for (int b = from; b < to; b++) {
+                for (int row = b * BAND; row < Math.min(height, (b + 1) * BAND) && !changed[b]; row++) {
+                    nextFrame.getRow(row, pixels, 0);
+                    previous.getRow(row, previousPixels, 0);
+                    changed[b] = !Arrays.equals(pixels, previousPixels);
+                }
+            }
+        });
+        int count = 0;
+        int[] indices = new int[bandCount];
+        for (int b = 0; b < bandCount; b++) {
+            if (changed[b]) {
+                indices[count++] = b;
+            }
+        }
+        return Arrays.copyOf(indices, count);
+    }
+
+    /**
+     * Brings {@code result}, a copy of the previous result, up to date with {@code nextFrame}
+     * when the screen is in the same rectangle: the rows of the changed bands, and the
+     * rows whose soft edge reaches them, are copied from the frame and composited again.
+     */
+    private void recomposite(ImageTransformer transformer, Image nextFrame, Image result,
+                             Rectangle screen, int[] changed) {
+        int reach = compositor.softEdge();
+        int i = 0;
+        while (i < changed.length) {
+            int first = Math.max(0, changed[i] * BAND - reach);
+            int last = Math.min(height, (changed[i] + 1) * BAND + reach);
+            // join the next changed bands whose rows meet these ones
+            while (++i < changed.length && changed[i] * BAND - reach <= last) {
+                last = Math.min(height, (changed[i] + 1) * BAND + reach);
+            }
+            int top = first;
+            transformer.forEachStrip(last - first, width, (from, to) -> {
+                int[] pixels = new int[width];
+                for (int row = top + from; row < top + to; row++) {
+                    nextFrame.getRow(row, pixels, 0);
+                    result.setRow(row, pixels, 0);
+                }
+                if (screen != null) {
+                    int start = Math.max(top + from, screen.yTopLeft) - screen.yTopLeft;
+                    int end = Math.min(top + to, screen.yBottomRight + 1) - screen.yTopLeft;
+                    if (start < end) {
+                        compositor.composite(result, mask, screen, start, end, layout);
+                    }
+                }
+            });
+        }
+    }
+
+    private static boolean sameRegion(Rectangle a, Rectangle b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        return a.xTopLeft == b.xTopLeft && a.yTopLeft == b.yTopLeft
+            && a.xBottomRight == b.xBottomRight && a.yBottomRight == b.yBottomRight;
+    }
+}
@@ -0,0 +1,399 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This datatype represents an <strong>immutable</strong>, lazily evaluated chain of
+ * {@link ImageTransformer} operations on an image. Adding an operation only records it;
+ * nothing is computed until {@link #toImage()} is called, which computes the result of
+ * the whole chain row by row and allocates only the final image.
+ * <p>
+ * Consecutive point operations ({@link #grayscale()}, {@link #red()}, {@link #mirror()},
+ * {@link #negative()}, {@link #posterize()} and {@link #applyLut(ColourLut)}) are fused
+ * into one pass over each row, and consecutive lookup tables are combined into one.
+ * Neighbourhood operations ({@link #denoise()} and {@link #weather()}) keep a rolling
+ * window of three rows, convolutions keep one row per row of their kernel, and
+ * {@link #blockPaint(int)} keeps one band of blocks.
+ * The memory used besides the result is therefore a few rows per operation instead of
+ * one image per operation. The result is exactly the same as applying the operations
+ * one after the other with {@link ImageTransformer}.
+ * <p>
+ * For example
+ * <blockquote><pre>
+ *  Image result = new ImageTransformer(image).pipeline().grayscale().denoise().posterize().toImage();
+ * </pre></blockquote>
+ */
+public final class ImagePipeline {
+    private final ImageTransformer transformer;
+    private final Image image;
+    private final List<Step> steps;
+
+    /*
+        Abstraction Function:
+            Represents the image obtained by applying the operations in steps,
+            in order, to image. The rows are computed with the parallelism of transformer.
+
+        Representation Invariant:
+            transformer transforms image
+            no two consecutive steps are PointSteps
+     */
+
+    /**
+     * Produces the rows of an image, one at a time.
+     */
+    private interface RowSource {
+        /**
+         * Copy row {@code row} into the first {@code width} positions of {@code dst}.
+         * Sources that keep a window of rows are most efficient when rows are
+         * requested in increasing order, one after the other.
+         */
+        void row(int row, int[] dst);
+    }
+
+    /**
+     * An operation of the chain, which computes the rows of its result from the rows of its input.
+     */
+    private interface Step {
+        RowSource open(RowSource input, int width, int height);
+    }
+
+    /**
+     * An operation that changes a row of pixels in place, without looking at other rows.
+     */
+    private interface RowOperation {
+        void apply(int[] pixels, int width);
+    }
+
+    ImagePipeline(ImageTransformer transformer, Image image) {
+        this(transformer, image, Collections.emptyList());
+    }
+
+    private ImagePipeline(ImageTransformer transformer, Image image, List<Step> steps) {
+        this.transformer = transformer;
+        this.image = image;
+        this.steps = steps;
+    }
+
+    private ImagePipeline then(Step step) {
+        List<Step> newSteps = new ArrayList<>(steps);
+        newSteps.add(step);
+        return new ImagePipeline(transformer, image, Collections.unmodifiableList(newSteps));
+    }
+
+    private ImagePipeline thenPoint(RowOperation operation, ColourLut lut) {
+        if (!steps.isEmpty() && steps.get(steps.size() - 1) instanceof PointStep) {
+            List<Step> newSteps = new ArrayList<>(steps);
+            PointStep last = (PointStep) newSteps.remove(newSteps.size() - 1);
+            newSteps.add(last.then(operation, lut));
+            return new ImagePipeline(transformer, image, Collections.unmodifiableList(newSteps));
+        }
+        return then(new PointStep(Collections.emptyList(), null).then(operation, lut));
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#grayscale()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline grayscale() {
+        return thenPoint(PointKernels::grayscale, null);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#red()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline red() {
+        return thenPoint(PointKernels::red, null);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#mirror()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline mirror() {
+        return thenPoint(ImagePipeline::mirror, null);
+    }
+
+    private static void mirror(int[] pixels, int width) {
+        for (int i = 0, j = width - 1; i < j; i++, j--) {
+            int pixel = pixels[i];
+            pixels[i] = pixels[j];
+            pixels[j] = pixel;
+        }
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#negative()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline negative() {
+        return thenPoint(PointKernels::negative, null);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#posterize()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline posterize() {
+        return thenPoint(PointKernels::posterize, null);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#applyLut(ColourLut)}.
+     *
+     * @param lut the point operation to apply, is not null
+     * @return the longer chain
+     */
+    public ImagePipeline applyLut(ColourLut lut) {
+        if (lut == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        return thenPoint(null, lut);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#denoise()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline denoise() {
+        return then((input, width, height) -> new WindowSource(input, width, height, false));
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#weather()}.
+     *
+     * @return the longer chain
+     */
+    public ImagePipeline weather() {
+        return then((input, width, height) -> new WindowSource(input, width, height, true));
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#convolve(ConvolutionKernel, BorderPolicy)}.
+     *
+     * @param kernel the kernel, is not null
+     * @param border how pixels outside the image are found, is not null
+     * @return the longer chain
+     */
+    public ImagePipeline convolve(ConvolutionKernel kernel, BorderPolicy border) {
+        if (kernel == null) {
+            throw new IllegalArgumentException("kernel is null");
+        }
+        if (border == null) {
+            throw new IllegalArgumentException("border policy is null");
+        }
+        return then((input, width, height) -> {
+            Convolution convolution = new Convolution(kernel, border, width, height, input::row);
+            return convolution::row;
+        });
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#gaussianBlur(double)}.
+     *
+     * @param sigma the standard deviation of the blur, in pixels, is positive and finite
+     * @return the longer chain
+     */
+    public ImagePipeline gaussianBlur(double sigma) {
+        return convolve(ConvolutionKernel.gaussian(sigma), BorderPolicy.CLAMP);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#sharpen(double, double)}.
+     *
+     * @param sigma  the standard deviation of the blur that finds the details, is positive and finite
+     * @param amount the strength of the sharpening, between 0 and 1024
+     * @return the longer chain
+     */
+    public ImagePipeline sharpen(double sigma, double amount) {
+        return convolve(ConvolutionKernel.unsharpMask(sigma, amount), BorderPolicy.CLAMP);
+    }
+
+    /**
+     * Obtain this chain followed by {@link ImageTransformer#blockPaint(int)}.
+     *
+     * @param blockSize the size of the block, must be less than width or height
+     * @return the longer chain
+     */
+    public ImagePipeline blockPaint(int blockSize) {
+        if (blockSize > image.width() || blockSize > image.height()) {
+            throw new IllegalArgumentException("Block Size is greater than width or height!");
+        }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block Size must be positive!");
+        }
+        return then((input, width, height) -> new BandSource(input, width, height, blockSize));
+    }
+
+    /**
+     * Computes the result of the chain.
+     *
+     * @return a new image with the result of applying the operations of the chain to the image
+     */
+    public Image toImage() {
+        int width = image.width();
+        int height = image.height();
+        Image result = image.createCompatibleImage(width, height);
+        transformer.forEachStrip(height, width, (from, to) -> {
+            // every strip has its own sources, which start with the rows they need above the strip
+            RowSource source = (row, dst) -> image.getRow(row, dst, 0);
+            for (Step step : steps) {
+                source = step.open(source, width, height);
+            }
+            int[] pixels = new int[width];
+            for (int row = from; row < to; row++) {
+                source.row(row, pixels);
+                result.setRow(row, pixels, 0);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * A run of point operations, applied one after the other to each row.
+     */
+    private static final class PointStep implements Step {
+        private final List<RowOperation> operations;
+        private final ColourLut lut;
+
+        /*
+            Abstraction Function:
+                Applies operations in order, and then lut if it is not null.
+         */
+
+        PointStep(List<RowOperation> operations, ColourLut lut) {
+            this.operations = operations;
+            this.lut = lut;
+        }
+
+        PointStep then(RowOperation operation, ColourLut nextLut) {
+            if (nextLut != null) {
+                return new PointStep(operations, lut == null ? nextLut : lut.andThen(nextLut));
+            }
+            List<RowOperation> newOperations = new ArrayList<>(operations);
+            if (lut != null) {
+                ColourLut pending = lut;
+                newOperations.add((pixels, width) -> pending.apply(pixels, 0, width));
+            }
+            newOperations.add(operation);
+            return new PointStep(Collections.unmodifiableList(newOperations), null);
+        }
+
+        @Override
+        public RowSource open(RowSource input, int width, int height) {
+            return (row, dst) -> {
+                input.row(row, dst);
+                for (RowOperation operation : operations) {
+                    operation.apply(dst, width);
+                }
+                if (lut != null) {
+                    lut.apply(dst, 0, width);
+                }
+            };
+        }
+    }
+
+    /**
+     * The rows of a 3x3 neighbourhood operation, computed from a window of three input rows.
+     */
+    private static final class WindowSource implements RowSource {
+        private final RowSource input;
+        private final int width, height;
+        private final boolean weather;
+        private final int[][] window;
+        private final MedianFilter.Scratch scratch;
+        private int centre = -1;
+
+        /*
+            Abstraction Function:
+                Produces the rows of denoise (or of weather if weather is true) applied
+                to the image produced by input. window[0], window[1] and window[2] hold
+                input rows centre - 1, centre and centre + 1, where they exist.
+         */
+
+        WindowSource(RowSource input, int width, int height, boolean weather) {
+            this.input = input;
+            this.width = width;
+            this.height = height;
+            this.weather = weather;
+            window = new int[3][width];
+            scratch = weather ? null : new MedianFilter.Scratch(width);
+        }
+
+        @Override
+        public void row(int row, int[] dst) {
+            if (centre >= 0 && row == centre + 1) {
+                int[] oldest = window[0];
+                window[0] = window[1];
+                window[1] = window[2];
+                window[2] = oldest;
+            } else if (row != centre) {
+                if (row > 0) {
+                    input.row(row - 1, window[0]);
+                }
+                input.row(row, window[1]);
+            }
+            if (row != centre && row + 1 < height) {
+                input.row(row + 1, window[2]);
+            }
+            centre = row;
+            if (weather) {
+                ImageTransformer.weatherRow(window, row, width, height, dst);
+            } else {
+                ImageTransformer.denoiseRow(window, row, width, height, dst, scratch);
+            }
+        }
+    }
+
+    /**
+     * The rows of a block painting, computed one band of blocks at a time.
+     */
+    private static final class BandSource implements RowSource {
+        private final RowSource input;
+        private final int width, height, blockSize;
+        private final int[] band, painted, row;
+        private int bandStart = -1;
+
+        /*
+            Abstraction Function:
+                Produces the rows of blockPaint(blockSize) applied to the image produced
+                by input. painted holds the painted rows from bandStart, which is a
+                multiple of blockSize, unless bandStart is -1.
+         */
+
+        BandSource(RowSource input, int width, int height, int blockSize) {
+            this.input = input;
+            this.width = width;
+            this.height = height;
+            this.blockSize = blockSize;
+            band = new int[width * blockSize];
+            painted = new int[width * blockSize];
+            row = new int[width];
+        }
+
+        @Override
+        public void row(int y, int[] dst) {
+            int start = y - y % blockSize;
+            if (start != bandStart) {
+                int blockHeight = Math.min(blockSize, height - start);
+                for (int i = 0; i < blockHeight; i++) {
+                    input.row(start + i, row);
+                    System.arraycopy(row, 0, band, i * width, width);
+                }
+                ImageTransformer.paintBand(band, width, blockSize, blockHeight, painted);
+                bandStart = start;
+            }
+            System.arraycopy(painted, (y - start) * width, dst, 0, width);
+        }
+    }
+}
@@ -16,23 +16,6 @@ public class ImageProcessing {
     
     /* ===== TASK 3 ===== */
 
-    /**
-     * Collapses a 2-D array into a 1-D vector.
-     *
-     * @param image the 2-D array of pixels
-     * @return a 2-D array collapsed into a vector
-     */
-    private static List<Integer> collapseMatrix(Image image) {
-        List<Integer> vector = new ArrayList<>();
-        for (int i = 0; i < image.height(); i++) {
-            for (int j = 0; j < image.width(); j++) {
-                int gray = image.getRGB(j, i) & FOUR_BYTE_HEX;
-                vector.add(gray);
-            }
-        }
-        return vector;
-    }
-
     /**
      * Calculates the cosine similarity values between two images.
      * The two images must the exact same dimensions and must not be null or black.
@@ -51,19 +34,15 @@ public class ImageProcessing {
             throw new IllegalArgumentException("Images are not the same dimensions!");
         }
 
-        ImageTransformer transform1 = new ImageTransformer(img1);
-        ImageTransformer transform2 = new ImageTransformer(img2);
-        Image gray1 = transform1.grayscale();
-        Image gray2 = transform2.grayscale();
-        List<Integer> vec1 = collapseMatrix(gray1);
-        List<Integer> vec2 = collapseMatrix(gray2);
+        byte[] vec1 = new ImageTransformer(img1).toGray().pixels();
+        byte[] vec2 = new ImageTransformer(img2).toGray().pixels();
 
         double vec1Mag = 0;
         double vec2Mag = 0;
         long dot = 0;
-        for (int i = 0; i < vec1.size(); i++) {
-            long vec1Element = vec1.get(i);
-            long vec2Element = vec2.get(i);
+        for (int i = 0; i < vec1.length; i++) {
+            long vec1Element = vec1[i] & FOUR_BYTE_HEX;
+            long vec2Element = vec2[i] & FOUR_BYTE_HEX;
             dot += vec1Element * vec2Element;
             vec1Mag += vec1Element * vec1Element;
             vec2Mag += vec2Element * vec2Element;
@@ -1,13 +1,16 @@
 package ca.ubc.ece.cpen221.ip.mp;
 
+import ca.ubc.ece.cpen221.ip.core.GrayImage;
 import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.PlanarImage;
 import ca.ubc.ece.cpen221.ip.core.Rectangle;
 
 import java.awt.Color;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 /**
  * This datatype (or class) provides operations for transforming an image.
@@ -19,6 +22,26 @@ import java.util.Stack;
  *     <li></li>
  * </ul>
  * </p>
+ *
+ * <p>An {@code ImageTransformer} created with a parallelism level greater than one
+ * splits the output of {@link #grayscale()}, {@link #red()}, {@link #mirror()},
+ * the flips and rotations such as {@link #rotate90()}, {@link #negative()}, {@link #posterize()}, {@link #applyLut(ColourLut)},
+ * {@link #denoise()}, {@link #weather()}, the morphological operations such as
+ * {@link #erode(StructuringElement)}, {@link #blockPaint(int)}, {@link #boxBlur(int)},
+ * {@link #downscale(int)}, {@link #convolve(ConvolutionKernel, BorderPolicy)} and
+ * {@link #connectedComponents(Color)} into strips of rows and computes them in parallel
+ * on a {@link ForkJoinPool} with that many threads, but no more threads than there
+ * are available processors. The common pool is used when it has that many threads;
+ * otherwise one shared pool of daemon threads is kept for every number of threads.
+ * The results are exactly the same as with serial execution. The image being transformed must not be changed
+ * while an operation is running.</p>
+ *
+ * <p>Most operations also have an overload that writes the result into a
+ * destination image supplied by the caller, such as {@link #grayscale(Image)}, so that
+ * a loop processing many images of one size can reuse its images instead of allocating
+ * new ones. Point operations accept the image being transformed as their destination
+ * and then change it in place; the other operations reject a destination that shares
+ * pixels with the image being transformed.</p>
  */
 
 @SuppressWarnings({"checkstyle:CommentsIndentation", "checkstyle:TodoComment"})
@@ -27,31 +50,169 @@ public class ImageTransformer {
     private final Image image;
     private final int width;
     private final int height;
+    private final int parallelism;
+    private volatile IntegralImage integralImage;
     private static final int DEFAULT_ALPHA = 255;
-    private static final int POSTER_0_64 = 32;
-    private static final int POSTER_65_128 = 96;
-    private static final int POSTER_129_255 = 222;
-    private static final int POSTER_LOW = 64;
-    private static final int POSTER_MID = 128;
     private static final int BIT_SHIFT_ALPHA = 24;
     private static final int BIT_SHIFT_RED = 16;
     private static final int BIT_SHIFT_GREEN = 8;
     private static final int MAX_COLOUR_VALUE = 255;
     private static final int FOUR_BYTE_HEX = 0xFF;
+    private static final int MIN_STRIP_PIXELS = 1 << 14;
+    private static final int STRIPS_PER_THREAD = 4;
+    private static final ConcurrentHashMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
 
     /**
      * Creates an ImageTransformer with an image. The provided image is
-     * <strong>never</strong> changed by any of the operations.
+     * <strong>never</strong> changed by any of the operations, unless it is
+     * passed as the destination of an operation that runs in place.
      *
      * @param img is not null
      */
     public ImageTransformer(Image img) {
+        this(img, 1);
+    }
+
+    /**
+     * Creates an ImageTransformer with an image that runs its operations with up to
+     * {@code parallelism} threads. The provided image is <strong>never</strong> changed
+     * by any of the operations, unless it is passed as the destination of an
+     * operation that runs in place.
+     *
+     * @param img         is not null
+     * @param parallelism the number of threads to use, is positive; 1 runs every
+     *                    operation on the calling thread, and more threads than
+     *                    there are available processors are never used
+     */
+    public ImageTransformer(Image img, int parallelism) {
         if (img == null) {
             throw new NullPointerException("Image cannot be null!");
         }
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive!");
+        }
         this.image = img;
         this.width = img.width();
         this.height = img.height();
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Obtain an empty {@link ImagePipeline} on the image, to which operations can be
+     * added and then computed in one pass, with the parallelism of this transformer.
+     *
+     * @return a pipeline whose result is the image itself
+     */
+    public ImagePipeline pipeline() {
+        return new ImagePipeline(this, image);
+    }
+
+    /**
+     * Computes the rows of an output image from {@code from} (inclusive) to {@code to} (exclusive).
+     */
+    @FunctionalInterface
+    interface StripKernel {
+        void compute(int from, int to);
+    }
+
+    /**
+     * Splits a range of strips in halves until each part is small enough to be
+     * computed by one thread.
+     */
+    private static final class StripTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final StripKernel kernel;
+        private final int from, to, grain;
+
+        StripTask(StripKernel kernel, int from, int to, int grain) {
+            this.kernel = kernel;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                kernel.compute(from, to);
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new StripTask(kernel, from, mid, grain), new StripTask(kernel, mid, to, grain));
+            }
+        }
+    }
+
+    /**
+     * Runs {@code kernel} over strips {@code 0} to {@code strips - 1}, in parallel
+     * if this transformer has a parallelism level greater than one.
+     *
+     * @param strips          the number of strips, each of which is computed independently
+     * @param pixelsPerStrip  the number of output pixels in one strip
+     * @param kernel          computes a range of strips
+     */
+    void forEachStrip(int strips, long pixelsPerStrip, StripKernel kernel) {
+        int threads = Math.min(parallelism, Runtime.getRuntime().availableProcessors());
+        if (threads == 1 || strips == 1) {
+            kernel.compute(0, strips);
+            return;
+        }
+        int minStrips = (int) Math.max(1, MIN_STRIP_PIXELS / Math.max(1, pixelsPerStrip));
+        int grain = Math.max(minStrips, strips / (threads * STRIPS_PER_THREAD));
+        if (grain >= strips) {
+            kernel.compute(0, strips);
+            return;
+        }
+        pool(threads).invoke(new StripTask(kernel, 0, strips, grain));
+    }
+
+    /**
+     * Obtain a pool with {@code threads} threads: the common pool if it has that many,
+     * and otherwise a pool of daemon threads that is created once and shared by all
+     * transformers. There is at most one such pool for every number of processors.
+     */
+    private static ForkJoinPool pool(int threads) {
+        if (threads == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(threads, n -> new ForkJoinPool(n, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setDaemon(true);
+            return thread;
+        }, null, false));
+    }
+
+    /**
+     * Checks that {@code destination} can receive the result of an operation.
+     *
+     * @param destination the image that receives the result
+     * @param inPlace     true if the operation reads every row of the image before it
+     *                    writes that row and no other, so that {@code destination} may
+     *                    be the image itself
+     * @return {@code destination}
+     */
+    private Image validateDestination(Image destination, boolean inPlace) {
+        return validateDestination(destination, width, height, inPlace);
+    }
+
+    /**
+     * Checks that {@code destination} can receive a {@code w}-by-{@code h} result of an operation.
+     */
+    private Image validateDestination(Image destination, int w, int h, boolean inPlace) {
+        if (destination == null) {
+            throw new IllegalArgumentException("destination is null");
+        }
+        if (destination.width() != w || destination.height() != h) {
+            throw new IllegalArgumentException("destination must be " + w + "-by-" + h + ": "
+                + destination.width() + "-by-" + destination.height());
+        }
+        if (destination.overlaps(image) && !(inPlace && destination == image)) {
+            throw new IllegalArgumentException("destination overlaps the image");
+        }
+        // a copy that still shares its pixels duplicates them on its first write:
+        // duplicate them here rather than from several strips at once
+        destination.ensureUnshared();
+        return destination;
     }
 
     /**
@@ -60,36 +221,181 @@ public class ImageTransformer {
      * @return the grayscale version of the instance.
      */
     public Image grayscale() {
-        Image gsImage = new Image(width, height);
-        for (int col = 0; col < width; col++) {
-            for (int row = 0; row < height; row++) {
-                Color color = image.get(col, row);
-                Color gray = Image.toGray(color);
-                gsImage.set(col, row, gray);
+        return grayscale(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #grayscale()} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image grayscale(Image destination) {
+        Image gsImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int row = from; row < to; row++) {
+                image.getRow(row, pixels, 0);
+                PointKernels.grayscale(pixels, width);
+                gsImage.setRow(row, pixels, 0);
             }
-        }
+        });
         return gsImage;
     }
 
+    /**
+     * Obtain the grayscale version of the image as an 8-bit {@link GrayImage},
+     * without building an RGB image. The intensities are the same as those of
+     * {@link #grayscale()}.
+     *
+     * @return the grayscale version of the instance.
+     */
+    public GrayImage toGray() {
+        return new GrayImage(image);
+    }
+
+    /**
+     * Obtain a black-and-white version of the image: pixels whose grayscale
+     * intensity is at least {@code level} become white (255) and all other
+     * pixels become black (0).
+     *
+     * @param level the threshold intensity, between 0 and 256
+     * @return the thresholded version of the instance.
+     */
+    public GrayImage threshold(int level) {
+        if (level < 0 || level > MAX_COLOUR_VALUE + 1) {
+            throw new IllegalArgumentException("threshold must be between 0 and 256: " + level);
+        }
+        GrayImage gray = toGray();
+        byte[] pixels = gray.pixels();
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (pixels[i] & FOUR_BYTE_HEX) >= level ? (byte) MAX_COLOUR_VALUE : 0;
+        }
+        return gray;
+    }
+
     /**
      * Obtain a version of the image with only the red colours.
      *
      * @return a reds-only version of the instance.
      */
     public Image red() {
-        Image redImage = new Image(width, height);
-        for (int col = 0; col < width; col++) {
-            for (int row = 0; row < height; row++) {
-                int originalPixel = image.getRGB(col, row);
-                int alpha = (originalPixel >> BIT_SHIFT_ALPHA) & FOUR_BYTE_HEX;
-                int red = (originalPixel >> BIT_SHIFT_RED) & FOUR_BYTE_HEX;
-                int desiredColor = (alpha << BIT_SHIFT_ALPHA) | (red << BIT_SHIFT_RED) | (0);
-                redImage.setRGB(col, row, desiredColor);
+        return red(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #red()} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image red(Image destination) {
+        Image redImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int row = from; row < to; row++) {
+                image.getRow(row, pixels, 0);
+                PointKernels.red(pixels, width);
+                redImage.setRow(row, pixels, 0);
             }
-        }
+        });
         return redImage;
     }
 
+    /**
+     * Obtain a version of the image in which the red, green and blue components of
+     * every pixel are replaced by the entries of {@code r}, {@code g} and {@code b}
+     * at those components.
+     *
+     * @param r the new value of every red component, 256 entries between 0 and 255
+     * @param g the new value of every green component, 256 entries between 0 and 255
+     * @param b the new value of every blue component, 256 entries between 0 and 255
+     * @return the version of the instance with the tables applied.
+     * @throws IllegalArgumentException if a table does not have 256 entries between 0 and 255
+     */
+    public Image applyLut(int[] r, int[] g, int[] b) {
+        return applyLut(ColourLut.of(r, g, b));
+    }
+
+    /**
+     * Obtain a version of the image with the point operation {@code lut} applied
+     * to every pixel.
+     *
+     * @param lut the point operation to apply, is not null
+     * @return the version of the instance with the operation applied.
+     */
+    public Image applyLut(ColourLut lut) {
+        if (lut == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        return applyLut(lut, image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #applyLut(ColourLut)} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
+     *
+     * @param lut         the point operation to apply, is not null
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image applyLut(ColourLut lut, Image destination) {
+        if (lut == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        Image lutImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int row = from; row < to; row++) {
+                image.getRow(row, pixels, 0);
+                lut.apply(pixels, 0, width);
+                lutImage.setRow(row, pixels, 0);
+            }
+        });
+        return lutImage;
+    }
+
+    /**
+     * Computes {@link #applyLut(ColourLut)} into a planar image. Every strip of rows is
+     * split into the planes of {@code destination}, and the tables are then applied to
+     * the strip one plane at a time, with one lookup per byte.
+     *
+     * @param lut         the point operation to apply, is not null
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code lut} or {@code destination} is {@code null},
+     *                                  or {@code destination} has other dimensions
+     */
+    public PlanarImage applyLut(ColourLut lut, PlanarImage destination) {
+        if (lut == null) {
+            throw new IllegalArgumentException("lookup table is null");
+        }
+        if (destination == null) {
+            throw new IllegalArgumentException("destination is null");
+        }
+        if (destination.width() != width || destination.height() != height) {
+            throw new IllegalArgumentException("destination must be " + width + "-by-" + height + ": "
+                + destination.width() + "-by-" + destination.height());
+        }
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int row = from; row < to; row++) {
+                image.getRow(row, pixels, 0);
+                destination.setRow(row, pixels, 0);
+            }
+            lut.apply(destination, from, to);
+        });
+        return destination;
+    }
+
     /* ===== TASK 1 ===== */
 
     /**
@@ -98,18 +404,168 @@ public class ImageTransformer {
      * @return the mirror image of the instance.
      */
     public Image mirror() {
-        Image mirrorImage = new Image(width, height);
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width / 2 + 1; j++) {
-                int pixelRight = image.getRGB(width - j - 1, i);
-                int pixelLeft = image.getRGB(j, i);
-                mirrorImage.setRGB(j, i, pixelRight);
-                mirrorImage.setRGB(width - j - 1, i, pixelLeft);
+        return mirror(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #mirror()} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image mirror(Image destination) {
+        Image mirrorImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            int[] mirrored = new int[width];
+            for (int i = from; i < to; i++) {
+                image.getRow(i, pixels, 0);
+                for (int j = 0; j < width; j++) {
+                    mirrored[width - j - 1] = pixels[j];
+                }
+                mirrorImage.setRow(i, mirrored, 0);
             }
-        }
+        });
         return mirrorImage;
     }
 
+    /**
+     * Returns the image turned upside down: row {@code r} of the result is
+     * row {@code height - 1 - r} of the image.
+     *
+     * @return the vertically flipped image
+     */
+    public Image flipVertical() {
+        return flipVertical(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #flipVertical()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image flipVertical(Image destination) {
+        Image flipVerticalImage = validateDestination(destination, width, height, false);
+        forEachStrip(height, width, (from, to) -> Geometry.flipRows(image, flipVerticalImage, false, from, to));
+        return flipVerticalImage;
+    }
+
+    /**
+     * Returns the image rotated by half a turn, which flips it both vertically
+     * and horizontally.
+     *
+     * @return the image rotated by 180 degrees
+     */
+    public Image rotate180() {
+        return rotate180(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #rotate180()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image rotate180(Image destination) {
+        Image rotate180Image = validateDestination(destination, width, height, false);
+        forEachStrip(height, width, (from, to) -> Geometry.flipRows(image, rotate180Image, true, from, to));
+        return rotate180Image;
+    }
+
+    /**
+     * Returns the transpose of the image, which swaps rows and columns: the pixel
+     * in column {@code c} and row {@code r} of the image is in column {@code r} and
+     * row {@code c} of the result. The pixels are moved in tiles that fit in the cache.
+     *
+     * @return the transposed image
+     */
+    public Image transpose() {
+        return transpose(image.createCompatibleImage(height, width));
+    }
+
+    /**
+     * Computes {@link #transpose()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, is {@code height} by {@code width} pixels, where the image is {@code width} by {@code height}
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image transpose(Image destination) {
+        Image transposeImage = validateDestination(destination, height, width, false);
+        int bands = (height + Geometry.BAND - 1) / Geometry.BAND;
+        forEachStrip(bands, (long) Geometry.BAND * width,
+            (from, to) -> Geometry.transposeBands(image, transposeImage, false, false, from, to));
+        return transposeImage;
+    }
+
+    /**
+     * Returns the image rotated by a quarter turn clockwise: the top row of the
+     * image becomes the right column of the result. The pixels are moved in tiles
+     * that fit in the cache.
+     *
+     * @return the image rotated by 90 degrees clockwise
+     */
+    public Image rotate90() {
+        return rotate90(image.createCompatibleImage(height, width));
+    }
+
+    /**
+     * Computes {@link #rotate90()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, is {@code height} by {@code width} pixels, where the image is {@code width} by {@code height}
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image rotate90(Image destination) {
+        Image rotate90Image = validateDestination(destination, height, width, false);
+        int bands = (height + Geometry.BAND - 1) / Geometry.BAND;
+        forEachStrip(bands, (long) Geometry.BAND * width,
+            (from, to) -> Geometry.transposeBands(image, rotate90Image, true, false, from, to));
+        return rotate90Image;
+    }
+
+    /**
+     * Returns the image rotated by a quarter turn counterclockwise: the top row of
+     * the image becomes the left column of the result, read from the bottom. The
+     * pixels are moved in tiles that fit in the cache.
+     *
+     * @return the image rotated by 90 degrees counterclockwise
+     */
+    public Image rotate270() {
+        return rotate270(image.createCompatibleImage(height, width));
+    }
+
+    /**
+     * Computes {@link #rotate270()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, is {@code height} by {@code width} pixels, where the image is {@code width} by {@code height}
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image rotate270(Image destination) {
+        Image rotate270Image = validateDestination(destination, height, width, false);
+        int bands = (height + Geometry.BAND - 1) / Geometry.BAND;
+        forEachStrip(bands, (long) Geometry.BAND * width,
+            (from, to) -> Geometry.transposeBands(image, rotate270Image, false, true, from, to));
+        return rotate270Image;
+    }
+
     /**
      * <p>Returns the negative version of an instance.<br />
      * If the colour of a pixel is (r, g, b) then the colours of the same pixel
@@ -118,37 +574,29 @@ public class ImageTransformer {
      * @return the negative of the instance.
      */
     public Image negative() {
-        Image negativeImage = new Image(width, height);
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                int originalPixel = image.getRGB(j, i);
-                int alpha = (originalPixel >> BIT_SHIFT_ALPHA) & FOUR_BYTE_HEX;
-                int red = MAX_COLOUR_VALUE - ((originalPixel >> BIT_SHIFT_RED) & FOUR_BYTE_HEX);
-                int green = MAX_COLOUR_VALUE - ((originalPixel >> BIT_SHIFT_GREEN) & FOUR_BYTE_HEX);
-                int blue = MAX_COLOUR_VALUE - (originalPixel & FOUR_BYTE_HEX);
-                int negativeRGB = (alpha << BIT_SHIFT_ALPHA) | (red << BIT_SHIFT_RED)
-                        | (green << BIT_SHIFT_GREEN) | (blue);
-                negativeImage.setRGB(j, i, negativeRGB);
-            }
-        }
-        return negativeImage;
+        return negative(image.createCompatibleImage(width, height));
     }
 
     /**
-     * Returns the posterized colour value for an individual colour component given the original component value
+     * Computes {@link #negative()} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
      *
-     * @param colour the integer value of a colour component
-     * @return the posterized value of the component colour
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
      */
-    private int calculatePosterizeColour(int colour) {
-
-        if (colour <= POSTER_LOW) {
-            return POSTER_0_64;
-        } else if (colour <= POSTER_MID) {
-            return POSTER_65_128;
-        } else {
-            return POSTER_129_255;
-        }
+    public Image negative(Image destination) {
+        Image negativeImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int i = from; i < to; i++) {
+                image.getRow(i, pixels, 0);
+                PointKernels.negative(pixels, width);
+                negativeImage.setRow(i, pixels, 0);
+            }
+        });
+        return negativeImage;
     }
 
     /**
@@ -157,18 +605,28 @@ public class ImageTransformer {
      * @return the posterized version of the instance
      */
     public Image posterize() {
-        Image posterizedImage = new Image(width, height);
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                int originalPixel = image.getRGB(j, i);
-                int red = calculatePosterizeColour((originalPixel >> BIT_SHIFT_RED) & FOUR_BYTE_HEX);
-                int green = calculatePosterizeColour((originalPixel >> BIT_SHIFT_GREEN) & FOUR_BYTE_HEX);
-                int blue = calculatePosterizeColour(originalPixel & FOUR_BYTE_HEX);
-                int colour = (DEFAULT_ALPHA << BIT_SHIFT_ALPHA) | (red << BIT_SHIFT_RED)
-                        | (green << BIT_SHIFT_GREEN) | (blue);
-                posterizedImage.setRGB(j, i, colour);
+        return posterize(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #posterize()} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed in place.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image posterize(Image destination) {
+        Image posterizedImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int i = from; i < to; i++) {
+                image.getRow(i, pixels, 0);
+                PointKernels.posterize(pixels, width);
+                posterizedImage.setRow(i, pixels, 0);
             }
-        }
+        });
         return posterizedImage;
     }
 
@@ -176,40 +634,47 @@ public class ImageTransformer {
     /* ===== TASK 2 ===== */
 
     /**
-     * Returns the median value of a list of integers
+     * Moves a window of three consecutive rows down the image so that it is centred on {@code row}.
+     * {@code window[0]}, {@code window[1]} and {@code window[2]} hold rows {@code row - 1},
+     * {@code row} and {@code row + 1}; rows outside the image are left untouched.
+     * The window must be moved one row at a time, starting at row {@code first}.
+     * Rows above {@code first} are read from the image, so strips of rows can be
+     * processed independently.
      *
-     * @param pixels a list of the integer representation of colour components
-     * @return the median value of a list of integers
+     * @param window three row buffers of length {@code width}
+     * @param row    the row the window is centred on
+     * @param first  the first row of the strip being processed
      */
-    private int median(List<Integer> pixels) {
-        Collections.sort(pixels);
-        int numPixels = pixels.size();
-
-        if (pixels.size() % 2 != 0) {
-            return pixels.get(numPixels / 2);
+    private void slideWindow(int[][] window, int row, int first) {
+        if (row == first) {
+            if (row > 0) {
+                image.getRow(row - 1, window[0], 0);
+            }
+            image.getRow(row, window[1], 0);
+        } else {
+            int[] oldest = window[0];
+            window[0] = window[1];
+            window[1] = window[2];
+            window[2] = oldest;
+        }
+        if (row + 1 < height) {
+            image.getRow(row + 1, window[2], 0);
         }
-
-        return (pixels.get((numPixels - 1) / 2) + pixels.get(numPixels / 2)) / 2;
     }
 
     /**
-     * Returns a list of Colors surrounding the given pixel, including the pixel itself.
+     * Computes one row of the denoised version of an image.
      *
-     * @param row the row of the input pixel
-     * @param col the column of the input pixel
-     * @return a list of Colors surrounding the input pixel, including the pixel itself.
+     * @param window  the rows above, at and below {@code row}, as filled by {@link #slideWindow}
+     * @param row     the row being computed
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param out     receives the {@code width} denoised pixels of the row
+     * @param scratch the working memory of the filter for rows of {@code width} pixels
      */
-    private List<Color> getPixelNeighbourhood(int row, int col) {
-        List<Color> pixelNeighbourhood = new ArrayList<Color>();
-        int[][] directions = {{0, 0}, {0, 1}, {0, -1}, {1, 0}, {-1, 0}, {1, 1}, {1, -1}, {-1, 1}, {-1, -1}};
-
-        for (int[] k : directions) {
-            if (row + k[0] >= 0 && row + k[0] < height && col + k[1] >= 0 && col + k[1] < width) {
-                Color neighbouringPixel = image.get(col + k[1], row + k[0]);
-                pixelNeighbourhood.add(neighbouringPixel);
-            }
-        }
-        return pixelNeighbourhood;
+    static void denoiseRow(int[][] window, int row, int width, int height, int[] out,
+                           MedianFilter.Scratch scratch) {
+        MedianFilter.median3x3Row(window, row, width, height, out, scratch);
     }
 
     /**
@@ -218,80 +683,254 @@ public class ImageTransformer {
      * @return the denoised version of the image
      */
     public Image denoise() {
-        Image denoiseImage = new Image(width, height);
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                List<Color> pixelNeighbourhood = getPixelNeighbourhood(i, j);
-                List<Integer> redList = new ArrayList<Integer>();
-                List<Integer> greenList = new ArrayList<Integer>();
-                List<Integer> blueList = new ArrayList<Integer>();
-                for (Color pixel : pixelNeighbourhood) {
-                    int red = pixel.getRed();
-                    int green = pixel.getGreen();
-                    int blue = pixel.getBlue();
-                    redList.add(red);
-                    greenList.add(green);
-                    blueList.add(blue);
-                }
-                int medianRed = median(redList);
-                int medianGreen = median(greenList);
-                int medianBlue = median(blueList);
-                int medianColour = (DEFAULT_ALPHA << BIT_SHIFT_ALPHA) | (medianRed << BIT_SHIFT_RED)
-                        | (medianGreen << BIT_SHIFT_GREEN) | medianBlue;
-                denoiseImage.setRGB(j, i, medianColour);
+        return denoise(image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #denoise()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image denoise(Image destination) {
+        Image denoiseImage = validateDestination(destination, false);
+        forEachStrip(height, width, (from, to) -> {
+            int[][] window = new int[3][width];
+            int[] pixels = new int[width];
+            MedianFilter.Scratch scratch = new MedianFilter.Scratch(width);
+
+            for (int i = from; i < to; i++) {
+                slideWindow(window, i, from);
+                denoiseRow(window, i, width, height, pixels, scratch);
+                denoiseImage.setRow(i, pixels, 0);
             }
+        });
+        return denoiseImage;
+    }
+
+    /**
+     * Returns a denoised version of an instance, in which every colour component of a
+     * pixel is the median of that component over the {@code 2 * radius + 1} by
+     * {@code 2 * radius + 1} pixels around it, clipped to the image. When the clipped
+     * window has an even number of pixels, the mean of the two middle values is used,
+     * rounded down. {@code denoise(1)} is the same as {@link #denoise()}.
+     * The time taken per pixel does not depend on {@code radius}.
+     *
+     * @param radius the radius of the window, is positive
+     * @return the denoised version of the image
+     */
+    public Image denoise(int radius) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Radius must be positive!");
         }
+        return denoise(radius, image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #denoise(int)} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param radius      the radius of the window, is positive
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image denoise(int radius, Image destination) {
+        if (radius <= 0) {
+            throw new IllegalArgumentException("Radius must be positive!");
+        }
+        if (radius == 1) {
+            return denoise(destination);
+        }
+        Image denoiseImage = validateDestination(destination, false);
+        forEachStrip(height, width, (from, to) -> MedianFilter.medianRows(image, denoiseImage, radius, from, to));
         return denoiseImage;
     }
 
     /**
+     * Computes one row of the weathered version of an image.
+     *
+     * @param window the rows above, at and below {@code row}, as filled by {@link #slideWindow}
+     * @param row    the row being computed
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param out    receives the {@code width} weathered pixels of the row
+     */
+    static void weatherRow(int[][] window, int row, int width, int height, int[] out) {
+        Morphology.erode3x3Row(window, row, width, height, out);
+    }
+
+    /**
+     * Returns a weathered version of an instance, in which every colour component of a
+     * pixel is the minimum of that component over the 3x3 pixels around it, clipped to
+     * the image. This is the same as {@code erode(StructuringElement.square(1))}.
+     *
      * @return a weathered version of the image.
      */
     public Image weather() {
-        Image weatheredImage = new Image(width, height);
-
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                List<Color> pixelNeighbourhood = getPixelNeighbourhood(i, j);
-                List<Integer> redList = new ArrayList<Integer>();
-                List<Integer> greenList = new ArrayList<Integer>();
-                List<Integer> blueList = new ArrayList<Integer>();
-                for (Color pixel : pixelNeighbourhood) {
-                    int red = pixel.getRed();
-                    int green = pixel.getGreen();
-                    int blue = pixel.getBlue();
-                    redList.add(red);
-                    greenList.add(green);
-                    blueList.add(blue);
+        return erode(StructuringElement.square(1));
+    }
+
+    /**
+     * Computes {@link #weather()} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image weather(Image destination) {
+        return erode(StructuringElement.square(1), destination);
+    }
+
+    /**
+     * Returns the erosion of an instance by a structuring element: every colour
+     * component of a pixel becomes the minimum of that component over the pixels at
+     * the offsets of {@code element} from it, ignoring offsets outside the image.
+     * The time taken per pixel does not depend on the size of a rectangular element.
+     *
+     * @param element the structuring element, is not null
+     * @return the eroded image
+     */
+    public Image erode(StructuringElement element) {
+        return erode(element, image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #erode(StructuringElement)} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param element     the structuring element, is not null
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image erode(StructuringElement element, Image destination) {
+        validateElement(element);
+        return morphology(image, element, false, validateDestination(destination, false));
+    }
+
+    /**
+     * Returns the dilation of an instance by a structuring element: every colour
+     * component of a pixel becomes the maximum of that component over the pixels at
+     * the offsets of the reflection of {@code element} from it, ignoring offsets
+     * outside the image. The time taken per pixel does not depend on the size of a
+     * rectangular element.
+     *
+     * @param element the structuring element, is not null
+     * @return the dilated image
+     */
+    public Image dilate(StructuringElement element) {
+        return dilate(element, image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #dilate(StructuringElement)} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param element     the structuring element, is not null
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image dilate(StructuringElement element, Image destination) {
+        validateElement(element);
+        return morphology(image, element, true, validateDestination(destination, false));
+    }
+
+    /**
+     * Returns the opening of an instance by a structuring element, which is the
+     * dilation of its erosion. Opening removes bright details smaller than the element.
+     *
+     * @param element the structuring element, is not null
+     * @return the opened image
+     */
+    public Image open(StructuringElement element) {
+        validateElement(element);
+        return morphology(morphology(image, element, false), element, true);
+    }
+
+    /**
+     * Returns the closing of an instance by a structuring element, which is the
+     * erosion of its dilation. Closing removes dark details smaller than the element.
+     *
+     * @param element the structuring element, is not null
+     * @return the closed image
+     */
+    public Image close(StructuringElement element) {
+        validateElement(element);
+        return morphology(morphology(image, element, true), element, false);
+    }
+
+    /**
+     * Returns the morphological gradient of an instance by a structuring element:
+     * every colour component of a pixel is the difference between that component in
+     * the dilation and in the erosion. Edges are bright and flat areas are black.
+     *
+     * @param element the structuring element, is not null
+     * @return the morphological gradient of the image
+     */
+    public Image morphologicalGradient(StructuringElement element) {
+        validateElement(element);
+        Image dilated = morphology(image, element, true);
+        Image eroded = morphology(image, element, false);
+        Image gradientImage = image.createCompatibleImage(width, height);
+        forEachStrip(height, width, (from, to) -> {
+            int[] high = new int[width];
+            int[] low = new int[width];
+            for (int i = from; i < to; i++) {
+                dilated.getRow(i, high, 0);
+                eroded.getRow(i, low, 0);
+                for (int j = 0; j < width; j++) {
+                    // every component of the dilation is at least the one of the erosion
+                    high[j] = (DEFAULT_ALPHA << BIT_SHIFT_ALPHA) | ((high[j] & 0xFFFFFF) - (low[j] & 0xFFFFFF));
                 }
-                int minRed = Collections.min(redList);
-                int minGreen = Collections.min(greenList);
-                int minBlue = Collections.min(blueList);
-                int minColour = (DEFAULT_ALPHA << BIT_SHIFT_ALPHA) | (minRed << BIT_SHIFT_RED)
-                        | (minGreen << BIT_SHIFT_GREEN) | minBlue;
-                weatheredImage.setRGB(j, i, minColour);
+                gradientImage.setRow(i, high, 0);
             }
+        });
+        return gradientImage;
+    }
+
+    private static StructuringElement validateElement(StructuringElement element) {
+        if (element == null) {
+            throw new IllegalArgumentException("structuring element is null");
         }
-        return weatheredImage;
+        return element;
+    }
+
+    private Image morphology(Image source, StructuringElement element, boolean dilate) {
+        return morphology(source, element, dilate, source.createCompatibleImage(width, height));
+    }
+
+    private Image morphology(Image source, StructuringElement element, boolean dilate, Image result) {
+        forEachStrip(height, width, (from, to) -> Morphology.filterRows(source, result, element, dilate, from, to));
+        return result;
     }
 
     /**
-     * Returns the mean Color object of the pixels within a blockHeight by blockWidth rectangle of the original pixel
+     * Returns the mean colour of the pixels within a blockHeight by blockWidth block of a band of rows.
      *
-     * @param currentRow  the row of the input pixel
-     * @param currentCol  the column of the input pixel
+     * @param band        the rows of the block, {@code width} pixels per row
+     * @param width       the width of the image
+     * @param currentCol  the column of the top-left pixel of the block
      * @param blockHeight the height of the block being painted
      * @param blockWidth  the width of the block being painted
-     * @return a Color with the mean component values of each pixel in the pixel neighbourhood
+     * @return the integer representation of the colour with the mean component values of the block
      */
-    private Color getBlockRGBAverage(int currentRow, int currentCol, int blockHeight, int blockWidth) {
+    private static int getBlockRGBAverage(int[] band, int width, int currentCol, int blockHeight, int blockWidth) {
         int red = 0;
         int green = 0;
         int blue = 0;
-        for (int i = currentRow; i < currentRow + blockHeight; i++) {
-            for (int j = currentCol; j < currentCol + blockWidth; j++) {
-                int pixel = image.getRGB(j, i);
+        for (int i = 0; i < blockHeight; i++) {
+            for (int j = i * width + currentCol; j < i * width + currentCol + blockWidth; j++) {
+                int pixel = band[j];
                 red += (pixel >> BIT_SHIFT_RED) & FOUR_BYTE_HEX;
                 green += (pixel >> BIT_SHIFT_GREEN) & FOUR_BYTE_HEX;
                 blue += pixel & FOUR_BYTE_HEX;
@@ -300,7 +939,27 @@ public class ImageTransformer {
         red /= (blockHeight * blockWidth);
         green /= (blockHeight * blockWidth);
         blue /= (blockHeight * blockWidth);
-        return new Color(red, green, blue);
+        return (DEFAULT_ALPHA << BIT_SHIFT_ALPHA) | (red << BIT_SHIFT_RED) | (green << BIT_SHIFT_GREEN) | blue;
+    }
+
+    /**
+     * Paints a band of rows as a sequence of blocks, each filled with its mean colour.
+     *
+     * @param band        the rows of the band, {@code width} pixels per row
+     * @param width       the width of the image
+     * @param blockSize   the size of the blocks
+     * @param blockHeight the number of rows in the band, at most {@code blockSize}
+     * @param painted     receives the painted rows of the band, {@code width} pixels per row
+     */
+    static void paintBand(int[] band, int width, int blockSize, int blockHeight, int[] painted) {
+        for (int j = 0; j < width; j += blockSize) {
+            int blockWidth = Math.min(blockSize, width - j);
+            int avgRGB = getBlockRGBAverage(band, width, j, blockHeight, blockWidth);
+            for (int blockRow = 0; blockRow < blockHeight; blockRow++) {
+                int start = blockRow * width + j;
+                Arrays.fill(painted, start, start + blockWidth, avgRGB);
+            }
+        }
     }
 
     /**
@@ -310,142 +969,286 @@ public class ImageTransformer {
      * @return an image as a sequence of m by m blocks of pixels
      */
     public Image blockPaint(int blockSize) {
+        return blockPaint(blockSize, image.createCompatibleImage(width, height));
+    }
+
+    /**
+     * Computes {@link #blockPaint(int)} into {@code destination} instead of a new image.
+     * {@code destination} must not share pixels with the image being transformed.
+     *
+     * @param blockSize   the size of the block, must be less than width or height
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     */
+    public Image blockPaint(int blockSize, Image destination) {
 
         if (blockSize > width || blockSize > height) {
             throw new IllegalArgumentException("Block Size is greater than width or height!");
         }
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block Size must be positive!");
+        }
 
-        Image blockPaintImage = new Image(width, height);
-        for (int i = 0; i < height; i += blockSize) {
-            for (int j = 0; j < width; j += blockSize) {
+        Image blockPaintImage = validateDestination(destination, false);
+        IntegralImage table = integralImage;
+        if (table == null || !table.describes(image)) {
+            // summing each block reads every pixel once, as building a table would
+            return blockPaintBands(blockSize, blockPaintImage);
+        }
+        // one strip per band of blocks, so that no block is split between strips
+        int bands = (height + blockSize - 1) / blockSize;
+        forEachStrip(bands, (long) width * blockSize, (from, to) -> {
+            int[] paintedBand = new int[width * blockSize];
+            for (int i = from * blockSize; i < Math.min(height, to * blockSize); i += blockSize) {
                 int blockHeight = Math.min(blockSize, height - i);
-                int blockWidth = Math.min(blockSize, width - j);
-                Color avgRGB = getBlockRGBAverage(i, j, blockHeight, blockWidth);
-                for (int blockRow = i; blockRow < i + blockHeight; blockRow++) {
-                    for (int blockCol = j; blockCol < j + blockWidth; blockCol++) {
-                        blockPaintImage.set(blockCol, blockRow, avgRGB);
+                for (int j = 0; j < width; j += blockSize) {
+                    int blockWidth = Math.min(blockSize, width - j);
+                    int avgRGB = table.mean(j, i, j + blockWidth, i + blockHeight);
+                    for (int blockRow = 0; blockRow < blockHeight; blockRow++) {
+                        int start = blockRow * width + j;
+                        Arrays.fill(paintedBand, start, start + blockWidth, avgRGB);
                     }
                 }
+                blockPaintImage.setRGB(0, i, width, blockHeight, paintedBand, 0, width);
             }
-        }
+        });
         return blockPaintImage;
     }
 
+    /**
+     * Computes {@link #blockPaint(int)} by summing every block, a band of blocks at a time,
+     * when no summed-area table of the image has been built.
+     */
+    private Image blockPaintBands(int blockSize, Image blockPaintImage) {
+        int bands = (height + blockSize - 1) / blockSize;
+        forEachStrip(bands, (long) width * blockSize, (from, to) -> {
+            int[] band = new int[width * blockSize];
+            int[] paintedBand = new int[width * blockSize];
+            for (int i = from * blockSize; i < Math.min(height, to * blockSize); i += blockSize) {
+                int blockHeight = Math.min(blockSize, height - i);
+                image.getRGB(0, i, width, blockHeight, band, 0, width);
+                paintBand(band, width, blockSize, blockHeight, paintedBand);
+                blockPaintImage.setRGB(0, i, width, blockHeight, paintedBand, 0, width);
+            }
+        });
+        return blockPaintImage;
+    }
 
-    /* ===== TASK 4 ===== */
+    /**
+     * Returns the summed-area table of the image. The table is built the first time
+     * it is needed and reused, by this method and by {@link #boxBlur(int)} and
+     * {@link #downscale(int)}, until the image changes. {@link #blockPaint(int)} uses
+     * the table if it has already been built, but never builds it.
+     *
+     * @return the summed-area table of the image
+     * @throws IllegalArgumentException if the image is too large for a table
+     */
+    public IntegralImage integralImage() {
+        IntegralImage table = integralImage;
+        if (table == null || !table.describes(image)) {
+            table = new IntegralImage(image);
+            integralImage = table;
+        }
+        return table;
+    }
 
     /**
-     * Returns a list of the largest region of connected pixels
+     * Returns a blurred version of an instance, in which every pixel is the mean colour
+     * of the {@code 2 * radius + 1} by {@code 2 * radius + 1} pixels around it, clipped
+     * to the image. Each component of the mean is rounded down. The time taken per
+     * pixel does not depend on {@code radius}.
      *
-     * @param screenColour the target pixel colour
-     * @return a list of the largest region of connected pixels
+     * @param radius the radius of the window, is not negative
+     * @return the blurred version of the image
+     * @throws IllegalArgumentException if the image is too large for a summed-area table
      */
-    private List<Integer[]> findLargestConnectedRegion(Color screenColour) {
-        boolean[][] visited = new boolean[height][width];
-        List<Integer[]> largestRegion = new ArrayList<>();
+    public Image boxBlur(int radius) {
+        return boxBlur(radius, image.createCompatibleImage(width, height));
+    }
 
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                Color pixel = image.get(j, i);
-                if (!visited[i][j] && isMatchingColour(screenColour, pixel)) {
-                    List<Integer[]> region = findConnectedRegion(i, j, screenColour, visited);
-                    if (region.size() > largestRegion.size()) {
-                        largestRegion = region;
-                    }
+    /**
+     * Computes {@link #boxBlur(int)} into {@code destination} instead of a new image.
+     * {@code destination} may be the image being transformed, which is then changed
+     * in place: the result is computed from the summed-area table of the image.
+     *
+     * @param radius      the radius of the window, is not negative
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
+     * @throws IllegalArgumentException if the image is too large for a summed-area table
+     */
+    public Image boxBlur(int radius, Image destination) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Radius must not be negative!");
+        }
+        IntegralImage table = integralImage();
+        Image blurredImage = validateDestination(destination, true);
+        forEachStrip(height, width, (from, to) -> {
+            int[] pixels = new int[width];
+            for (int i = from; i < to; i++) {
+                int top = Math.max(0, i - radius);
+                int bottom = Math.min(height, i + radius + 1);
+                for (int j = 0; j < width; j++) {
+                    pixels[j] = table.mean(Math.max(0, j - radius), top, Math.min(width, j + radius + 1), bottom);
                 }
+                blurredImage.setRow(i, pixels, 0);
             }
+        });
+        return blurredImage;
+    }
+
+    /**
+     * Returns a smaller version of an instance, in which every pixel is the mean colour of
+     * a {@code scale} by {@code scale} block of the image. The result is
+     * {@code ceil(width / scale)} by {@code ceil(height / scale)} pixels; the blocks on the
+     * right and bottom edges may be smaller when {@code scale} does not divide the width
+     * or height. Each component of the mean is rounded down.
+     *
+     * @param scale the size of the blocks, is positive
+     * @return the downscaled version of the image
+     * @throws IllegalArgumentException if the image is too large for a summed-area table
+     */
+    public Image downscale(int scale) {
+        if (scale <= 0) {
+            throw new IllegalArgumentException("Scale must be positive!");
         }
-        return largestRegion;
-    }
-
-    /**
-     * Returns a list of coordinates of connected pixels
-     *
-     * @param row          the row of the current pixel
-     * @param col          the column of the current pixel
-     * @param screenColour the target colour being replaced
-     * @param visited      a 2-D boolean array containing pixels that have already been visited
-     * @return a list of coordinates of connected pixels
-     */
-    private List<Integer[]> findConnectedRegion(int row, int col, Color screenColour, boolean[][] visited) {
-        List<Integer[]> region = new ArrayList<>();
-        Stack<Integer[]> stack = new Stack<>();
-        Integer[] point = new Integer[]{row, col};
-        stack.push(point);
-
-        while (!stack.isEmpty()) {
-            point = stack.pop();
-            int x = point[0];
-            int y = point[1];
-
-            if (x >= 0 && x < height && y >= 0 && y < width && !visited[x][y]) {
-                Color currentColour = image.get(y, x);
-                if (isMatchingColour(screenColour, currentColour)) {
-                    visited[x][y] = true;
-                    region.add(new Integer[]{x, y});
-                    stack.push(new Integer[]{x, y + 1});
-                    stack.push(new Integer[]{x, y - 1});
-                    stack.push(new Integer[]{x + 1, y});
-                    stack.push(new Integer[]{x - 1, y});
-                    stack.push(new Integer[]{x + 1, y + 1});
-                    stack.push(new Integer[]{x + 1, y - 1});
-                    stack.push(new Integer[]{x - 1, y + 1});
-                    stack.push(new Integer[]{x - 1, y - 1});
+        IntegralImage table = integralImage();
+        int newWidth = (width + scale - 1) / scale;
+        int newHeight = (height + scale - 1) / scale;
+        Image downscaledImage = image.createCompatibleImage(newWidth, newHeight);
+        forEachStrip(newHeight, (long) newWidth * scale * scale, (from, to) -> {
+            int[] pixels = new int[newWidth];
+            for (int y = from; y < to; y++) {
+                int top = y * scale;
+                int bottom = Math.min(height, top + scale);
+                for (int x = 0; x < newWidth; x++) {
+                    pixels[x] = table.mean(x * scale, top, Math.min(width, (x + 1) * scale), bottom);
                 }
+                downscaledImage.setRow(y, pixels, 0);
             }
-        }
-        return region;
+        });
+        return downscaledImage;
     }
 
     /**
-     * Returns the smallest rectangle containing a region of pixels
+     * Returns the convolution of an instance with a kernel: every colour component of
+     * a pixel becomes the weighted sum of that component over the window of the kernel
+     * centred on the pixel, rounded to the nearest integer and clamped to 0 to 255.
+     * Pixels of the window outside the image are found with {@code border}.
+     * A separable kernel takes time proportional to its width plus its height per pixel.
      *
-     * @param region a list of pixel coordinates
-     * @return the smallest rectangle containing a region of pixels
+     * @param kernel the kernel, is not null
+     * @param border how pixels outside the image are found, is not null
+     * @return the convolved image
      */
-    private Rectangle findRectangle(List<Integer[]> region) {
-        int minRow = height;
-        int minCol = width;
-        int maxRow = 0;
-        int maxCol = 0;
-        for (Integer[] point : region) {
-            if (point[0] < minRow) {
-                minRow = point[0];
-            }
-            if (point[0] > maxRow) {
-                maxRow = point[0];
-            }
-            if (point[1] < minCol) {
-                minCol = point[1];
-            }
-            if (point[1] > maxCol) {
-                maxCol = point[1];
-            }
-        }
-        return new Rectangle(minRow, minCol, maxRow, maxCol);
+    public Image convolve(ConvolutionKernel kernel, BorderPolicy border) {
+        return convolve(kernel, border, image.createCompatibleImage(width, height));
     }
 
     /**
-     * Overlays the background image onto the original image
+     * Computes {@link #convolve(ConvolutionKernel, BorderPolicy)} into {@code destination}
+     * instead of a new image. {@code destination} must not share pixels with the image
+     * being transformed.
      *
-     * @param greenScreenImage the original image
-     * @param screenColour     the given colour being replaced
-     * @param rectangle        the smallest rectangle containing the largest connection region of screenColour
-     * @param backgroundImage  the image being overlayed
+     * @param kernel      the kernel, is not null
+     * @param border      how pixels outside the image are found, is not null
+     * @param destination receives the result, has the dimensions of the image
+     * @return {@code destination}
+     * @throws IllegalArgumentException if {@code destination} is {@code null}, has other
+     *                                  dimensions or overlaps the image
      */
-    private void setGreenScreen(Image greenScreenImage, Color screenColour,
-                                Rectangle rectangle, Image backgroundImage) {
-        for (int i = rectangle.xTopLeft; i <= rectangle.xBottomRight; i++) {
-            for (int j = rectangle.yTopLeft; j <= rectangle.yBottomRight; j++) {
-                Color currentPixel = greenScreenImage.get(j, i);
-                if (currentPixel.equals(screenColour)) {
-                    int backWidth = backgroundImage.width();
-                    int backHeight = backgroundImage.height();
-                    Color backColour = backgroundImage.get(j % backWidth, i % backHeight);
-                    greenScreenImage.set(j, i, backColour);
-                }
+    public Image convolve(ConvolutionKernel kernel, BorderPolicy border, Image destination) {
+        if (kernel == null) {
+            throw new IllegalArgumentException("kernel is null");
+        }
+        if (border == null) {
+            throw new IllegalArgumentException("border policy is null");
+        }
+        Image convolvedImage = validateDestination(destination, false);
+        forEachStrip(height, width, (from, to) -> {
+            Convolution convolution = new Convolution(kernel, border, width, height,
+                (row, dst) -> image.getRow(row, dst, 0));
+            int[] pixels = new int[width];
+            for (int i = from; i < to; i++) {
+                convolution.row(i, pixels);
+                convolvedImage.setRow(i, pixels, 0);
             }
+        });
+        return convolvedImage;
+    }
+
+    /**
+     * Returns a version of an instance blurred with {@link ConvolutionKernel#gaussian(double)},
+     * extending the edges of the image outwards.
+     *
+     * @param sigma the standard deviation of the blur, in pixels, is positive and finite
+     * @return the blurred image
+     */
+    public Image gaussianBlur(double sigma) {
+        return convolve(ConvolutionKernel.gaussian(sigma), BorderPolicy.CLAMP);
+    }
+
+    /**
+     * Returns a version of an instance sharpened with
+     * {@link ConvolutionKernel#unsharpMask(double, double)}, extending the edges of the
+     * image outwards.
+     *
+     * @param sigma  the standard deviation of the blur that finds the details, is positive and finite
+     * @param amount the strength of the sharpening, between 0 and 1024
+     * @return the sharpened image
+     */
+    public Image sharpen(double sigma, double amount) {
+        return convolve(ConvolutionKernel.unsharpMask(sigma, amount), BorderPolicy.CLAMP);
+    }
+
+
+    /* ===== TASK 4 ===== */
+
+    /**
+     * Labels the 8-connected components of the pixels of a colour, with the
+     * parallelism of this transformer.
+     *
+     * @param colour the colour of the pixels to label, is not null
+     * @return the labelling of the components of the pixels of {@code colour}
+     * @throws IllegalArgumentException if {@code colour} is {@code null}
+     */
+    public ConnectedComponents connectedComponents(Color colour) {
+        return connectedComponents(ChromaKey.rgb(colour, 0));
+    }
+
+    /**
+     * Labels the 8-connected components of the pixels that match a chroma key, with
+     * the parallelism of this transformer.
+     *
+     * @param key the key, is not null
+     * @return the labelling of the components of the pixels that match {@code key}
+     * @throws IllegalArgumentException if {@code key} is {@code null}
+     */
+    public ConnectedComponents connectedComponents(ChromaKey key) {
+        return new ConnectedComponents(this, keyMask(key), width, height);
+    }
+
+    /**
+     * Keys the image into a bit mask, in bands of rows that start at the start of a
+     * {@code long} of the mask, so that no two threads write to the same {@code long}.
+     *
+     * @param key the key, is not null
+     * @return one bit per pixel, row after row, 64 pixels to a {@code long}, set for
+     *         the pixels that match {@code key}
+     * @throws IllegalArgumentException if {@code key} is {@code null}
+     */
+    private long[] keyMask(ChromaKey key) {
+        if (key == null) {
+            throw new IllegalArgumentException("key is null");
         }
+        long[] mask = new long[(int) (((long) width * height + Long.SIZE - 1) / Long.SIZE)];
+        int band = ConnectedComponents.BAND;
+        forEachStrip((height + band - 1) / band, (long) band * width,
+            (from, to) -> key.mask(image, mask, from * band, Math.min(height, to * band)));
+        return mask;
     }
 
     /**
@@ -456,27 +1259,66 @@ public class ImageTransformer {
      * @return the instance image with an overlayed background image
      */
     public Image greenScreen(Color screenColour, Image backgroundImage) {
+        return greenScreen(ChromaKey.rgb(screenColour, 0), backgroundImage);
+    }
+
+    /**
+     * Returns an image with a background image overlayed onto the largest connected area
+     * of the pixels that match a chroma key. The image is keyed once, and finding the area
+     * and overlaying the background only read the resulting mask.
+     *
+     * @param key             the key of the screen, is not null
+     * @param backgroundImage the image being overlayed onto the original image
+     * @return the instance image with an overlayed background image
+     * @throws IllegalArgumentException if {@code key} is {@code null}
+     */
+    public Image greenScreen(ChromaKey key, Image backgroundImage) {
+        return greenScreen(key, Compositor.tile(backgroundImage));
+    }
+
+    /**
+     * Returns an image with a background composited onto the largest connected area
+     * of the pixels that match a chroma key, within the smallest rectangle containing
+     * that area. The image is keyed once, and finding the area and compositing the
+     * background only read the resulting mask. The rows of the rectangle are
+     * composited in parallel with the parallelism of this transformer. For the frames
+     * of a sequence, {@link GreenScreenSequence} reuses the work done for the
+     * parts of a frame that did not change.
+     *
+     * @param key        the key of the screen, is not null
+     * @param compositor how to composite the background, is not null
+     * @return the instance image with the background composited onto it
+     * @throws IllegalArgumentException if {@code key} or {@code compositor} is {@code null}
+     */
+    public Image greenScreen(ChromaKey key, Compositor compositor) {
+        if (compositor == null) {
+            throw new IllegalArgumentException("compositor is null");
+        }
         Image greenScreenImage = new Image(image);
-        List<Integer[]> region = findLargestConnectedRegion(screenColour);
-        if (!region.isEmpty()) {
-            Rectangle rectangle = findRectangle(region);
-            setGreenScreen(greenScreenImage, screenColour, rectangle, backgroundImage);
+        long[] mask = keyMask(key);
+        ConnectedComponents components = new ConnectedComponents(this, mask, width, height);
+        int largest = components.largest();
+        if (largest != 0) {
+            Rectangle rectangle = components.bounds(largest);
+            // duplicate the pixels shared with the image on this thread, not in every strip
+            greenScreenImage.ensureUnshared();
+            int rows = rectangle.yBottomRight - rectangle.yTopLeft + 1;
+            int columns = rectangle.xBottomRight - rectangle.xTopLeft + 1;
+            forEachStrip(rows, columns,
+                (from, to) -> compositor.composite(greenScreenImage, mask, rectangle, from, to));
         }
         return greenScreenImage;
     }
 
-    private boolean isMatchingColour(Color targetColor, Color color) {
-        return color.getRGB() == targetColor.getRGB();
-    }
-
     /* ===== TASK 5 ===== */
     /*
     private double calculateAngle(Image img) {
+        GrayImage gray = new ImageTransformer(img).toGray();
+        byte[] intensities = gray.pixels();
         double[][] pixels = new double[img.height()][img.width()];
         for (int i = 0; i < img.height(); i++) {
             for (int j = 0; j < img.width(); j++) {
-                Color pixelColour = img.get(j, i);
-                pixels[i][j] = pixelColour.getRed();
+                pixels[i][j] = intensities[i * img.width() + j] & 0xFF;
             }
         }
 
@@ -513,7 +1355,7 @@ public class ImageTransformer {
                 //}
             }
         }
-        output.show();
+        new ImageViewer(output).show();
 
         List<Double> angles = new ArrayList<>();
         for (int u = 0; u < img.height(); u++) {
@@ -557,62 +1399,11 @@ public class ImageTransformer {
     public Image alignTextImage() {
         ImageTransformer t = new ImageTransformer(image);
         Image alignedImage = t.grayscale();
-        Image downscaleAlignedImage = downscale(alignedImage, 4);
+        Image downscaleAlignedImage = new ImageTransformer(alignedImage).downscale(4);
         double angle = calculateAngle(downscaleAlignedImage);
         Image rotatedImage = rotateImage(angle);
         System.out.println(angle);
         return rotatedImage;
     }
-
-    public Image downscale(Image img, int scale) {
-
-        int newWidth = img.width() / scale;
-        int newHeight = img.height() / scale;
-        Image downscaledImage = new Image(newWidth, newHeight);
-
-        // Calculate the scale factor for width and height
-
-
-        // Iterate over each pixel in the downscaled image
-        for (int y = 0; y < newHeight; y++) {
-            for (int x = 0; x < newWidth; x++) {
-                // Determine the region in the original image to average
-                int xStart = x * scale;
-                int yStart = y * scale;
-                int xEnd = Math.min((x + 1) * scale, img.width());
-                int yEnd = Math.min((y + 1) * scale, img.height());
-
-                // Accumulate the color values
-                long redSum = 0, greenSum = 0, blueSum = 0;
-                int count = 0;
-
-                for (int i = yStart; i < yEnd; i++) {
-                    for (int j = xStart; j < xEnd; j++) {
-                        int rgb = img.getRGB(j, i);
-                        int red = (rgb >> BIT_SHIFT_RED) & FOUR_BYTE_HEX;
-                        int green = (rgb >> BIT_SHIFT_GREEN) & FOUR_BYTE_HEX;
-                        int blue = rgb & FOUR_BYTE_HEX;
-
-                        redSum += red;
-                        greenSum += green;
-                        blueSum += blue;
-                        count++;
-                    }
-                }
-
-                // Calculate the average color
-                int avgRed = (int) (redSum / count);
-                int avgGreen = (int) (greenSum / count);
-                int avgBlue = (int) (blueSum / count);
-                int avgRgb = (avgRed << BIT_SHIFT_RED) | (avgGreen << BIT_SHIFT_GREEN) | avgBlue;
-
-                // Set the averaged color to the downscaled image
-                downscaledImage.setRGB(x, y, avgRgb);
-            }
-        }
-
-        return downscaledImage;
-
-    }
     */
 }
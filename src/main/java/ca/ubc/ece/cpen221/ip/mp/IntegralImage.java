@@ -0,0 +1,201 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
+
+import java.awt.Color;
+
+/**
+ * This datatype represents an <strong>immutable</strong> summed-area table (integral
+ * image) of an {@link Image}: for every colour component it holds the sum of that
+ * component over every rectangle that starts at the top-left corner of the image.
+ * The sum or mean of a component over any rectangle is then found from four entries
+ * of the table, in constant time whatever the size of the rectangle.
+ * <p>
+ * The table is built with one pass over the image. It is what
+ * {@link ImageTransformer#blockPaint(int)}, {@link ImageTransformer#boxBlur(int)}
+ * and {@link ImageTransformer#downscale(int)} use, and an {@code ImageTransformer}
+ * reuses one table for all of them for as long as its image does not change.
+ */
+public final class IntegralImage {
+    /**
+     * The index of the red component for {@link #sum(Rectangle, int)}.
+     */
+    public static final int RED = 0;
+
+    /**
+     * The index of the green component for {@link #sum(Rectangle, int)}.
+     */
+    public static final int GREEN = 1;
+
+    /**
+     * The index of the blue component for {@link #sum(Rectangle, int)}.
+     */
+    public static final int BLUE = 2;
+
+    private static final int COMPONENTS = 3;
+    private static final int OPAQUE = 0xFF000000;
+
+    private final int width, height;
+    private final long digest;
+    private final long[] sums;
+
+    /*
+        Abstraction Function:
+            Represents the summed-area table of a width-by-height image whose digest is
+            digest: sums[(row * (width + 1) + col) * 3 + c] is the sum of component c
+            (0 for red, 1 for green, 2 for blue) over the pixels above row row and to
+            the left of column col.
+
+        Representation Invariant:
+            width >= 1
+            height >= 1
+            sums.length == (width + 1) * (height + 1) * 3
+            the entries of the first row and of the first column are 0
+     */
+
+    /**
+     * Builds the summed-area table of an image.
+     *
+     * @param image the image, is not null
+     * @throws IllegalArgumentException if {@code image} is {@code null}
+     * @throws IllegalArgumentException if {@code image} is too large for a table,
+     *                                  as reported by {@link #fits(int, int)}
+     */
+    public IntegralImage(Image image) {
+        if (image == null) {
+            throw new IllegalArgumentException("image is null");
+        }
+        if (!fits(image.width(), image.height())) {
+            throw new IllegalArgumentException("image is too large for a summed-area table");
+        }
+        width = image.width();
+        height = image.height();
+        digest = image.digest();
+        sums = new long[(width + 1) * (height + 1) * COMPONENTS];
+        int stride = (width + 1) * COMPONENTS;
+        int[] pixels = new int[width];
+        for (int row = 0; row < height; row++) {
+            image.getRow(row, pixels, 0);
+            long red = 0;
+            long green = 0;
+            long blue = 0;
+            int above = row * stride + COMPONENTS;
+            int at = above + stride;
+            for (int col = 0; col < width; col++) {
+                int pixel = pixels[col];
+                red += (pixel >> 16) & 0xFF;
+                green += (pixel >> 8) & 0xFF;
+                blue += pixel & 0xFF;
+                sums[at] = sums[above] + red;
+                sums[at + 1] = sums[above + 1] + green;
+                sums[at + 2] = sums[above + 2] + blue;
+                above += COMPONENTS;
+                at += COMPONENTS;
+            }
+        }
+    }
+
+    /**
+     * Checks if the table of a {@code width}-by-{@code height} image can be built.
+     * The table takes 24 bytes per pixel and is held in one array, so it is limited
+     * to images of about 700 million pixels.
+     *
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @return true if the table of such an image can be built
+     */
+    public static boolean fits(int width, int height) {
+        return (long) (width + 1) * (height + 1) * COMPONENTS <= Integer.MAX_VALUE - 8;
+    }
+
+    /**
+     * Returns the width of the image.
+     *
+     * @return the width of the image (in pixels)
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * Returns the height of the image.
+     *
+     * @return the height of the image (in pixels)
+     */
+    public int height() {
+        return height;
+    }
+
+    /**
+     * Checks if this table was built from an image with the dimensions and digest of {@code image}.
+     */
+    boolean describes(Image image) {
+        return image.width() == width && image.height() == height && image.digest() == digest;
+    }
+
+    /**
+     * Returns the sum of one colour component over a region of the image.
+     *
+     * @param region    the region, both corners included, within the image
+     * @param component {@link #RED}, {@link #GREEN} or {@link #BLUE}
+     * @return the sum of the component over the pixels of {@code region}
+     * @throws IllegalArgumentException if {@code region} is {@code null} or not within the image,
+     *                                  or if {@code component} is not a component
+     */
+    public long sum(Rectangle region, int component) {
+        validateRegion(region);
+        if (component < RED || component > BLUE) {
+            throw new IllegalArgumentException("component must be RED, GREEN or BLUE: " + component);
+        }
+        return sum(region.xTopLeft, region.yTopLeft, region.xBottomRight + 1, region.yBottomRight + 1, component);
+    }
+
+    /**
+     * Returns the mean colour of a region of the image. Each component of the
+     * mean is rounded down.
+     *
+     * @param region the region, both corners included, within the image
+     * @return the mean colour of the pixels of {@code region}
+     * @throws IllegalArgumentException if {@code region} is {@code null} or not within the image
+     */
+    public Color mean(Rectangle region) {
+        validateRegion(region);
+        return new Color(mean(region.xTopLeft, region.yTopLeft, region.xBottomRight + 1, region.yBottomRight + 1));
+    }
+
+    private void validateRegion(Rectangle region) {
+        if (region == null) {
+            throw new IllegalArgumentException("region is null");
+        }
+        if (region.xBottomRight >= width || region.yBottomRight >= height) {
+            throw new IllegalArgumentException("region is not within the image");
+        }
+    }
+
+    /**
+     * The sum of a component over columns {@code left} to {@code right - 1}
+     * of rows {@code top} to {@code bottom - 1}.
+     */
+    private long sum(int left, int top, int right, int bottom, int component) {
+        int stride = (width + 1) * COMPONENTS;
+        int topLeft = top * stride + left * COMPONENTS + component;
+        int topRight = top * stride + right * COMPONENTS + component;
+        int bottomLeft = bottom * stride + left * COMPONENTS + component;
+        int bottomRight = bottom * stride + right * COMPONENTS + component;
+        return sums[bottomRight] - sums[bottomLeft] - sums[topRight] + sums[topLeft];
+    }
+
+    /**
+     * The integer representation of the opaque mean colour, rounded down, of
+     * columns {@code left} to {@code right - 1} of rows {@code top} to {@code bottom - 1},
+     * which is not empty.
+     */
+    int mean(int left, int top, int right, int bottom) {
+        long count = (long) (right - left) * (bottom - top);
+        int red = (int) (sum(left, top, right, bottom, RED) / count);
+        int green = (int) (sum(left, top, right, bottom, GREEN) / count);
+        int blue = (int) (sum(left, top, right, bottom, BLUE) / count);
+        return OPAQUE | red << 16 | green << 8 | blue;
+    }
+}
@@ -0,0 +1,327 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+import java.util.Arrays;
+
+/**
+ * Median filters for {@link ImageTransformer#denoise()} and
+ * {@link ImageTransformer#denoise(int)}. Every colour component of a pixel is
+ * replaced by the median of that component over the square window centred on
+ * the pixel, clipped to the image. When the clipped window has an even number of
+ * pixels, the median is the mean of the two middle values, rounded down.
+ * <p>
+ * The 3x3 filter sorts every column of three pixels once and combines three
+ * sorted columns into the median of nine, so it needs no more than a few
+ * comparisons per pixel. Larger windows use the constant-time median filter of
+ * Perreault and H&eacute;bert: a 256-bin histogram is kept for every column of the
+ * window, moved down one row at a time, and the histogram of the window is moved
+ * along the row by adding one column histogram and subtracting another, so the
+ * cost per pixel does not depend on the radius. Only 16-bin coarse histograms are
+ * moved for every pixel; the 256 fine bins are brought up to date 16 at a time, and
+ * only for the coarse bin the median falls in. No memory is allocated per pixel or
+ * per row: both filters work in memory that is allocated once for a strip of rows.
+ */
+final class MedianFilter {
+    private static final int OPAQUE = 0xFF000000;
+    private static final int BINS = 256;
+    private static final int COARSE_BINS = 16;
+    private static final int COARSE_SHIFT = 4;
+    private static final int[] SHIFTS = {16, 8, 0};
+
+    private MedianFilter() {
+    }
+
+    /**
+     * The working memory of the 3x3 filter for rows of one width, allocated once
+     * by the caller and reused for every row it computes.
+     */
+    static final class Scratch {
+        private final int[] values = new int[9];
+        private final int[] low, middle, high;
+
+        /**
+         * Allocate the working memory for rows of {@code width} pixels.
+         */
+        Scratch(int width) {
+            low = new int[width];
+            middle = new int[width];
+            high = new int[width];
+        }
+    }
+
+    /**
+     * Computes one row of the 3x3 median filter of an image.
+     *
+     * @param window  the rows above, at and below {@code row}; rows outside the image are ignored
+     * @param row     the row being computed
+     * @param width   the width of the image
+     * @param height  the height of the image
+     * @param out     receives the {@code width} filtered pixels of the row
+     * @param scratch the working memory for rows of {@code width} pixels, used by one thread
+     */
+    static void median3x3Row(int[][] window, int row, int width, int height, int[] out, Scratch scratch) {
+        if (row == 0 || row + 1 == height || width < 3) {
+            for (int col = 0; col < width; col++) {
+                out[col] = clippedMedian(window, row, col, width, height, scratch.values);
+            }
+            return;
+        }
+
+        int[] above = window[0];
+        int[] centre = window[1];
+        int[] below = window[2];
+        int[] low = scratch.low;
+        int[] middle = scratch.middle;
+        int[] high = scratch.high;
+        for (int col = 1; col < width - 1; col++) {
+            out[col] = OPAQUE;
+        }
+        for (int shift : SHIFTS) {
+            // sort every column of three
+            for (int col = 0; col < width; col++) {
+                int a = (above[col] >> shift) & 0xFF;
+                int b = (centre[col] >> shift) & 0xFF;
+                int c = (below[col] >> shift) & 0xFF;
+                int min = Math.min(a, b);
+                int max = Math.max(a, b);
+                low[col] = Math.min(min, c);
+                high[col] = Math.max(max, c);
+                middle[col] = Math.max(min, Math.min(max, c));
+            }
+            // the median of nine is the median of the largest low, the median middle and the smallest high
+            for (int col = 1; col < width - 1; col++) {
+                int maxLow = Math.max(low[col - 1], Math.max(low[col], low[col + 1]));
+                int medMiddle = median3(middle[col - 1], middle[col], middle[col + 1]);
+                int minHigh = Math.min(high[col - 1], Math.min(high[col], high[col + 1]));
+                out[col] |= median3(maxLow, medMiddle, minHigh) << shift;
+            }
+        }
+        out[0] = clippedMedian(window, row, 0, width, height, scratch.values);
+        out[width - 1] = clippedMedian(window, row, width - 1, width, height, scratch.values);
+    }
+
+    private static int median3(int a, int b, int c) {
+        return Math.max(Math.min(a, b), Math.min(Math.max(a, b), c));
+    }
+
+    /**
+     * Computes the 3x3 median of one pixel whose window may be clipped by the borders of the image.
+     */
+    private static int clippedMedian(int[][] window, int row, int col, int width, int height, int[] scratch) {
+        int rgb = OPAQUE;
+        for (int shift : SHIFTS) {
+            int n = 0;
+            for (int i = Math.max(0, row - 1); i <= Math.min(height - 1, row + 1); i++) {
+                int[] pixels = window[i - row + 1];
+                for (int j = Math.max(0, col - 1); j <= Math.min(width - 1, col + 1); j++) {
+                    // insertion sort as the values are gathered
+                    int value = (pixels[j] >> shift) & 0xFF;
+                    int k = n++;
+                    while (k > 0 && scratch[k - 1] > value) {
+                        scratch[k] = scratch[k - 1];
+                        k--;
+                    }
+                    scratch[k] = value;
+                }
+            }
+            int median = n % 2 != 0 ? scratch[n / 2] : (scratch[(n - 1) / 2] + scratch[n / 2]) / 2;
+            rgb |= median << shift;
+        }
+        return rgb;
+    }
+
+    /**
+     * Computes rows {@code from} (inclusive) to {@code to} (exclusive) of the median
+     * filter of {@code source} with a window of {@code 2 * radius + 1} by
+     * {@code 2 * radius + 1} pixels.
+     *
+     * @param source the image to filter
+     * @param target receives the filtered rows, has the dimensions of {@code source}
+     * @param radius the radius of the window, is positive
+     * @param from   the first row to compute
+     * @param to     the row after the last row to compute
+     */
+    static void medianRows(Image source, Image target, int radius, int from, int to) {
+        int width = source.width();
+        int height = source.height();
+        // histograms of the columns of the window, one set per colour component
+        int[][] columnFine = new int[SHIFTS.length][width * BINS];
+        int[][] columnCoarse = new int[SHIFTS.length][width * COARSE_BINS];
+        WindowHistogram[] windows = new WindowHistogram[SHIFTS.length];
+        for (int c = 0; c < SHIFTS.length; c++) {
+            windows[c] = new WindowHistogram(columnFine[c], columnCoarse[c]);
+        }
+        int[] pixels = new int[width];
+
+        for (int row = Math.max(0, from - radius); row <= Math.min(height - 1, from + radius); row++) {
+            source.getRow(row, pixels, 0);
+            updateColumns(pixels, columnFine, columnCoarse, 1);
+        }
+
+        for (int row = from; row < to; row++) {
+            if (row > from) {
+                if (row - radius - 1 >= 0) {
+                    source.getRow(row - radius - 1, pixels, 0);
+                    updateColumns(pixels, columnFine, columnCoarse, -1);
+                }
+                if (row + radius < height) {
+                    source.getRow(row + radius, pixels, 0);
+                    updateColumns(pixels, columnFine, columnCoarse, 1);
+                }
+            }
+            int rows = Math.min(height - 1, row + radius) - Math.max(0, row - radius) + 1;
+
+            for (WindowHistogram window : windows) {
+                window.reset(0, Math.min(width - 1, radius));
+            }
+            for (int col = 0; col < width; col++) {
+                int low = Math.max(0, col - radius);
+                int high = Math.min(width - 1, col + radius);
+                int n = rows * (high - low + 1);
+                int rgb = OPAQUE;
+                for (int c = 0; c < SHIFTS.length; c++) {
+                    WindowHistogram window = windows[c];
+                    window.moveTo(low, high);
+                    int median;
+                    if (n % 2 != 0) {
+                        median = window.select(n / 2);
+                    } else {
+                        median = (window.select(n / 2 - 1) + window.select(n / 2)) / 2;
+                    }
+                    rgb |= median << SHIFTS[c];
+                }
+                pixels[col] = rgb;
+            }
+            target.setRow(row, pixels, 0);
+        }
+    }
+
+    /**
+     * Adds ({@code sign == 1}) or removes ({@code sign == -1}) a row of pixels
+     * to or from the column histograms.
+     */
+    private static void updateColumns(int[] pixels, int[][] columnFine, int[][] columnCoarse, int sign) {
+        for (int c = 0; c < SHIFTS.length; c++) {
+            int[] columnFineC = columnFine[c];
+            int[] columnCoarseC = columnCoarse[c];
+            int shift = SHIFTS[c];
+            for (int col = 0; col < pixels.length; col++) {
+                int value = (pixels[col] >> shift) & 0xFF;
+                columnFineC[col * BINS + value] += sign;
+                columnCoarseC[col * COARSE_BINS + (value >> COARSE_SHIFT)] += sign;
+            }
+        }
+    }
+
+    /**
+     * The histogram of one colour component over the columns {@code low} to {@code high}
+     * of the window, built from the column histograms as the window moves along a row.
+     */
+    private static final class WindowHistogram {
+        private final int[] columnFine, columnCoarse;
+        private final int[] fine = new int[BINS];
+        private final int[] coarse = new int[COARSE_BINS];
+        private final int[] segmentLow = new int[COARSE_BINS];
+        private final int[] segmentHigh = new int[COARSE_BINS];
+        private int low, high;
+
+        /*
+            Abstraction Function:
+                coarse is the coarse histogram of columns low to high. The 16 fine bins
+                of coarse bin b are only brought up to date when the median falls in b:
+                they hold the fine histogram of columns segmentLow[b] to segmentHigh[b],
+                which is empty if segmentHigh[b] < segmentLow[b].
+
+            Representation Invariant:
+                segmentLow[b] <= low and segmentHigh[b] <= high for every b
+         */
+
+        WindowHistogram(int[] columnFine, int[] columnCoarse) {
+            this.columnFine = columnFine;
+            this.columnCoarse = columnCoarse;
+        }
+
+        /**
+         * Start a new row with the window over columns {@code low} to {@code high}.
+         */
+        void reset(int low, int high) {
+            Arrays.fill(coarse, 0);
+            Arrays.fill(segmentLow, 0);
+            Arrays.fill(segmentHigh, -1);
+            this.low = low;
+            this.high = low - 1;
+            moveTo(low, high);
+        }
+
+        /**
+         * Move the window to the right, to columns {@code newLow} to {@code newHigh}.
+         */
+        void moveTo(int newLow, int newHigh) {
+            for (int col = high + 1; col <= newHigh; col++) {
+                addCoarse(col, 1);
+            }
+            for (int col = low; col < newLow; col++) {
+                addCoarse(col, -1);
+            }
+            low = newLow;
+            high = newHigh;
+        }
+
+        private void addCoarse(int col, int sign) {
+            int start = col * COARSE_BINS;
+            for (int bin = 0; bin < COARSE_BINS; bin++) {
+                coarse[bin] += sign * columnCoarse[start + bin];
+            }
+        }
+
+        private void addFine(int col, int base, int sign) {
+            int start = col * BINS + base;
+            for (int bin = 0; bin < COARSE_BINS; bin++) {
+                fine[base + bin] += sign * columnFine[start + bin];
+            }
+        }
+
+        /**
+         * Bring the fine bins of coarse bin {@code bin} up to date with the window.
+         */
+        private void updateSegment(int bin) {
+            int base = bin << COARSE_SHIFT;
+            if (segmentHigh[bin] < low) {
+                // nothing in common with the window: rebuild
+                Arrays.fill(fine, base, base + COARSE_BINS, 0);
+                for (int col = low; col <= high; col++) {
+                    addFine(col, base, 1);
+                }
+            } else {
+                for (int col = segmentHigh[bin] + 1; col <= high; col++) {
+                    addFine(col, base, 1);
+                }
+                for (int col = segmentLow[bin]; col < low; col++) {
+                    addFine(col, base, -1);
+                }
+            }
+            segmentLow[bin] = low;
+            segmentHigh[bin] = high;
+        }
+
+        /**
+         * Finds the {@code k}-th smallest value (counting from 0) in the window.
+         */
+        int select(int k) {
+            int seen = 0;
+            int bin = 0;
+            while (seen + coarse[bin] <= k) {
+                seen += coarse[bin];
+                bin++;
+            }
+            updateSegment(bin);
+            int value = bin << COARSE_SHIFT;
+            while (seen + fine[value] <= k) {
+                seen += fine[value];
+                value++;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+import java.util.Arrays;
+
+/**
+ * Grey-level erosion and dilation for the morphological operations of
+ * {@link ImageTransformer}. Every colour component is filtered on its own. The
+ * erosion of a pixel by a {@link StructuringElement} is the minimum of each
+ * component over the pixels at the offsets of the element, and the dilation is
+ * the maximum over the pixels at the reflected offsets; offsets that fall outside
+ * the image are ignored.
+ * <p>
+ * Minima over runs of consecutive pixels use the van Herk/Gil-Werman algorithm:
+ * for a run of {@code k} pixels the line is cut into blocks of {@code k}, the
+ * running minimum is kept forwards and backwards within every block, and the
+ * minimum of any {@code k} consecutive pixels is the minimum of one backward and
+ * one forward value, so it takes three comparisons per pixel whatever {@code k}
+ * is. Rectangles are filtered along the rows and then along the columns. Other
+ * elements are filtered along the rows once for every distinct run of columns,
+ * and the rows are combined with one comparison per run. A dilation is computed
+ * as the erosion of the inverted components by the reflected element.
+ * <p>
+ * Rows are filtered in chunks, so the memory used is a few chunks of rows
+ * whatever the height of the image.
+ */
+final class Morphology {
+    private static final int OPAQUE = 0xFF000000;
+    private static final int MAX_COLOUR_VALUE = 255;
+    private static final int[] SHIFTS = {16, 8, 0};
+    private static final int CHUNK_ROWS = 64;
+
+    private Morphology() {
+    }
+
+    /**
+     * Computes one row of the erosion of an image by the 3x3 square.
+     *
+     * @param window the rows above, at and below {@code row}; rows outside the image are ignored
+     * @param row    the row being computed
+     * @param width  the width of the image
+     * @param height the height of the image
+     * @param out    receives the {@code width} eroded pixels of the row
+     */
+    static void erode3x3Row(int[][] window, int row, int width, int height, int[] out) {
+        // a missing row or column can be replaced by the centre without changing any minimum
+        int[] centre = window[1];
+        int[] above = row > 0 ? window[0] : centre;
+        int[] below = row + 1 < height ? window[2] : centre;
+        for (int col = 0; col < width; col++) {
+            int left = Math.max(0, col - 1);
+            int right = Math.min(width - 1, col + 1);
+            int rgb = OPAQUE;
+            for (int shift : SHIFTS) {
+                int min = MAX_COLOUR_VALUE;
+                for (int j = left; j <= right; j++) {
+                    min = Math.min(min, (above[j] >> shift) & 0xFF);
+                    min = Math.min(min, (centre[j] >> shift) & 0xFF);
+                    min = Math.min(min, (below[j] >> shift) & 0xFF);
+                }
+                rgb |= min << shift;
+            }
+            out[col] = rgb;
+        }
+    }
+
+    /**
+     * Computes rows {@code from} (inclusive) to {@code to} (exclusive) of the erosion
+     * or dilation of {@code source} by {@code element}.
+     *
+     * @param source  the image to filter
+     * @param target  receives the filtered rows, has the dimensions of {@code source}
+     * @param element the structuring element
+     * @param dilate  true for the dilation, false for the erosion
+     * @param from    the first row to compute
+     * @param to      the row after the last row to compute
+     */
+    static void filterRows(Image source, Image target, StructuringElement element, boolean dilate,
+                           int from, int to) {
+        new Chunks(source, dilate ? element.reflect() : element, dilate).filter(target, from, to);
+    }
+
+    /**
+     * Sets {@code out[x]} to the minimum of {@code src[offset + x]} to
+     * {@code src[offset + x + k - 1]}, for {@code x} from 0 to {@code n - 1}.
+     * {@code forward} and {@code backward} need {@code n + k - 1} entries.
+     */
+    private static void slidingMin(int[] src, int offset, int n, int k, int[] forward, int[] backward, int[] out) {
+        if (k == 1) {
+            System.arraycopy(src, offset, out, 0, n);
+            return;
+        }
+        int length = n + k - 1;
+        for (int start = 0; start < length; start += k) {
+            int end = Math.min(length, start + k);
+            int min = MAX_COLOUR_VALUE;
+            for (int i = start; i < end; i++) {
+                min = Math.min(min, src[offset + i]);
+                forward[i] = min;
+            }
+            min = MAX_COLOUR_VALUE;
+            for (int i = end - 1; i >= start; i--) {
+                min = Math.min(min, src[offset + i]);
+                backward[i] = min;
+            }
+        }
+        for (int x = 0; x < n; x++) {
+            out[x] = Math.min(backward[x], forward[x + k - 1]);
+        }
+    }
+
+    /**
+     * The buffers for filtering an image one chunk of rows at a time.
+     */
+    private static final class Chunks {
+        private final Image source;
+        private final StructuringElement element;
+        private final int width, height, flip, outside;
+        private final int minLow, maxHigh, span, chunkRows;
+        private final int[] input, padded, forward, backward, line, result, plane, auxiliary;
+
+        /*
+            Abstraction Function:
+                Erodes source by element, after inverting every component if flip is 0xFF.
+                input holds the rows of the image needed by a chunk, from the row of
+                the first run above it to the row of the last run below it; rows outside
+                the image hold outside, whose components become 255 once inverted by flip.
+                padded holds one component of one row with 255 on both sides, so that
+                padded[i] is the component of column i + minLow.
+         */
+
+        Chunks(Image source, StructuringElement element, boolean dilate) {
+            this.source = source;
+            this.element = element;
+            width = source.width();
+            height = source.height();
+            flip = dilate ? 0xFF : 0;
+            outside = dilate ? 0 : 0xFFFFFF;
+            int low = 0;
+            int high = 0;
+            for (int i = 0; i < element.runs(); i++) {
+                low = Math.min(low, element.runLow(i));
+                high = Math.max(high, element.runHigh(i));
+            }
+            minLow = low;
+            maxHigh = high;
+            span = element.maxRow() - element.minRow();
+            chunkRows = Math.max(CHUNK_ROWS, span + 1);
+            int inputRows = chunkRows + span;
+            input = new int[inputRows * width];
+            padded = new int[width + maxHigh - minLow];
+            forward = new int[padded.length];
+            backward = new int[padded.length];
+            line = new int[width];
+            result = new int[chunkRows * width];
+            plane = new int[element.isRectangle() ? inputRows * width : chunkRows * width];
+            auxiliary = element.isRectangle() ? new int[inputRows * width] : null;
+        }
+
+        void filter(Image target, int from, int to) {
+            for (int first = from; first < to; first += chunkRows) {
+                int rows = Math.min(to, first + chunkRows) - first;
+                int inputRows = rows + span;
+                for (int i = 0; i < inputRows; i++) {
+                    int y = first + element.minRow() + i;
+                    if (y >= 0 && y < height) {
+                        source.getRow(y, input, i * width);
+                    } else {
+                        Arrays.fill(input, i * width, (i + 1) * width, outside);
+                    }
+                }
+                Arrays.fill(result, 0, rows * width, OPAQUE);
+                for (int shift : SHIFTS) {
+                    if (element.isRectangle()) {
+                        erodeRectangle(shift, rows);
+                    } else {
+                        erodeRuns(shift, rows);
+                    }
+                    for (int i = 0; i < rows * width; i++) {
+                        result[i] |= (plane[i] ^ flip) << shift;
+                    }
+                }
+                for (int i = 0; i < rows; i++) {
+                    target.setRow(first + i, result, i * width);
+                }
+            }
+        }
+
+        /**
+         * Fills {@code padded} with one component of input row {@code i}.
+         */
+        private void pad(int i, int shift) {
+            Arrays.fill(padded, 0, -minLow, MAX_COLOUR_VALUE);
+            Arrays.fill(padded, width - minLow, padded.length, MAX_COLOUR_VALUE);
+            int start = i * width;
+            for (int col = 0; col < width; col++) {
+                padded[col - minLow] = ((input[start + col] >> shift) & 0xFF) ^ flip;
+            }
+        }
+
+        /**
+         * Erodes one component by the rectangle: along every input row into
+         * {@code auxiliary}, then along the columns into the first rows of {@code plane}.
+         */
+        private void erodeRectangle(int shift, int rows) {
+            int inputRows = rows + span;
+            int k = span + 1;
+            for (int i = 0; i < inputRows; i++) {
+                pad(i, shift);
+                slidingMin(padded, 0, width, maxHigh - minLow + 1, forward, backward, line);
+                System.arraycopy(line, 0, auxiliary, i * width, width);
+            }
+            if (k == 1) {
+                System.arraycopy(auxiliary, 0, plane, 0, rows * width);
+                return;
+            }
+            // the same blocks as slidingMin, but a whole row at a time: the backward
+            // minima go to plane, and the forward minima replace the rows of auxiliary
+            for (int start = 0; start < inputRows; start += k) {
+                int end = Math.min(inputRows, start + k);
+                System.arraycopy(auxiliary, (end - 1) * width, plane, (end - 1) * width, width);
+                for (int i = end - 2; i >= start; i--) {
+                    int at = i * width;
+                    for (int col = 0; col < width; col++) {
+                        plane[at + col] = Math.min(plane[at + width + col], auxiliary[at + col]);
+                    }
+                }
+                for (int i = start + 1; i < end; i++) {
+                    int at = i * width;
+                    for (int col = 0; col < width; col++) {
+                        auxiliary[at + col] = Math.min(auxiliary[at - width + col], auxiliary[at + col]);
+                    }
+                }
+            }
+            int distance = (k - 1) * width;
+            for (int i = 0; i < rows * width; i++) {
+                plane[i] = Math.min(plane[i], auxiliary[i + distance]);
+            }
+        }
+
+        /**
+         * Erodes one component by an element of any shape: every input row is filtered
+         * once for every distinct run of columns, and combined into the output rows of
+         * {@code plane} that use it.
+         */
+        private void erodeRuns(int shift, int rows) {
+            Arrays.fill(plane, 0, rows * width, MAX_COLOUR_VALUE);
+            int inputRows = rows + span;
+            int runs = element.runs();
+            for (int i = 0; i < inputRows; i++) {
+                pad(i, shift);
+                for (int r = 0; r < runs; r++) {
+                    int low = element.runLow(r);
+                    int high = element.runHigh(r);
+                    if (firstRunWithColumns(r, low, high) != r) {
+                        continue;
+                    }
+                    boolean filtered = false;
+                    for (int s = r; s < runs; s++) {
+                        if (element.runLow(s) != low || element.runHigh(s) != high) {
+                            continue;
+                        }
+                        int out = i + element.minRow() - element.runRow(s);
+                        if (out < 0 || out >= rows) {
+                            continue;
+                        }
+                        if (!filtered) {
+                            slidingMin(padded, low - minLow, width, high - low + 1, forward, backward, line);
+                            filtered = true;
+                        }
+                        int at = out * width;
+                        for (int col = 0; col < width; col++) {
+                            plane[at + col] = Math.min(plane[at + col], line[col]);
+                        }
+                    }
+                }
+            }
+        }
+
+        private int firstRunWithColumns(int r, int low, int high) {
+            for (int s = 0; s < r; s++) {
+                if (element.runLow(s) == low && element.runHigh(s) == high) {
+                    return s;
+                }
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import ca.ubc.ece.cpen221.ip.core.Image;
+
+/**
+ * Per-pixel kernels for the point operations of {@link ImageTransformer},
+ * working in place on rows of packed RGB pixels.
+ * <p>
+ * When the {@code jdk.incubator.vector} module is enabled (for example with
+ * {@code --add-modules jdk.incubator.vector}), the bulk of each row is handled
+ * by the SIMD kernels in {@link VectorPointKernels} and only the last few pixels
+ * by the scalar code here. Otherwise every pixel is handled by the scalar code.
+ * Both give exactly the same results.
+ */
+final class PointKernels {
+    static final boolean VECTORIZED = isVectorApiAvailable();
+
+    private static final int RED_AND_ALPHA = 0xFFFF0000;
+    private static final int RGB = 0x00FFFFFF;
+    static final int POSTER_0_64 = 32;
+    static final int POSTER_65_128 = 96;
+    static final int POSTER_129_255 = 222;
+    static final int POSTER_LOW = 64;
+    static final int POSTER_MID = 128;
+
+    private PointKernels() {
+    }
+
+    private static boolean isVectorApiAvailable() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            return VectorPointKernels.isUsable();
+        }
+        catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replace each of the first {@code length} pixels by its grayscale version,
+     * as {@link Image#toGray(int)} does.
+     */
+    static void grayscale(int[] pixels, int length) {
+        int done = VECTORIZED ? VectorPointKernels.grayscale(pixels, length) : 0;
+        for (int i = done; i < length; i++) {
+            pixels[i] = Image.toGray(pixels[i]);
+        }
+    }
+
+    /**
+     * Keep only the alpha and red components of each of the first {@code length} pixels.
+     */
+    static void red(int[] pixels, int length) {
+        int done = VECTORIZED ? VectorPointKernels.red(pixels, length) : 0;
+        for (int i = done; i < length; i++) {
+            pixels[i] &= RED_AND_ALPHA;
+        }
+    }
+
+    /**
+     * Replace each of the first {@code length} pixels by its negative, keeping its alpha.
+     */
+    static void negative(int[] pixels, int length) {
+        int done = VECTORIZED ? VectorPointKernels.negative(pixels, length) : 0;
+        for (int i = done; i < length; i++) {
+            // 255 - c == c ^ 255 for every 8-bit component c
+            pixels[i] ^= RGB;
+        }
+    }
+
+    /**
+     * Replace each of the first {@code length} pixels by its opaque posterized version.
+     */
+    static void posterize(int[] pixels, int length) {
+        int done = VECTORIZED ? VectorPointKernels.posterize(pixels, length) : 0;
+        if (done < length) {
+            // one table lookup per component instead of two comparisons
+            ColourLut.POSTERIZE.apply(pixels, done, length);
+        }
+    }
+
+    /**
+     * Returns the posterized value of one colour component.
+     *
+     * @param colour the value of a colour component, between 0 and 255
+     * @return the posterized value of the component
+     */
+    static int posterize(int colour) {
+        if (colour <= POSTER_LOW) {
+            return POSTER_0_64;
+        } else if (colour <= POSTER_MID) {
+            return POSTER_65_128;
+        } else {
+            return POSTER_129_255;
+        }
+    }
+}
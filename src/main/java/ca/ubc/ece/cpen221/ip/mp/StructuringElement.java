@@ -0,0 +1,270 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This datatype represents an <strong>immutable</strong> structuring element for the
+ * morphological operations of {@link ImageTransformer}: a set of pixel offsets
+ * ({@code dx}, {@code dy}) from an origin, where {@code dx} counts columns to the right
+ * and {@code dy} counts rows down. The origin itself always belongs to the element.
+ * <p>
+ * Rectangles ({@link #square(int)} and {@link #rectangle(int, int)}) are separable and
+ * are applied in constant time per pixel whatever their size. Other shapes
+ * ({@link #disk(int)} and {@link #of(boolean[][], int, int)}) are applied one horizontal
+ * run of offsets at a time, so their cost per pixel grows with their number of rows,
+ * but not with their width.
+ */
+public final class StructuringElement {
+    private final int[] runRows, runLows, runHighs;
+    private final boolean rectangle;
+
+    /*
+        Abstraction Function:
+            Represents the set of offsets (dx, dy) with dy == runRows[i] and
+            runLows[i] <= dx <= runHighs[i] for some i. rectangle is true when
+            these offsets form a rectangle.
+
+        Representation Invariant:
+            runRows.length == runLows.length == runHighs.length >= 1
+            runLows[i] <= runHighs[i] for every i
+            runs are sorted by row and then by column, and runs in the same row
+                are separated by at least one column
+            some run contains the offset (0, 0)
+            rectangle is true iff every row between the first and the last run
+                has exactly one run, and all runs have the same columns
+     */
+
+    private StructuringElement(int[] runRows, int[] runLows, int[] runHighs) {
+        this.runRows = runRows;
+        this.runLows = runLows;
+        this.runHighs = runHighs;
+        boolean same = true;
+        for (int i = 0; i < runRows.length; i++) {
+            same &= runRows[i] == runRows[0] + i && runLows[i] == runLows[0] && runHighs[i] == runHighs[0];
+        }
+        rectangle = same;
+    }
+
+    /**
+     * Obtain the square of {@code 2 * radius + 1} by {@code 2 * radius + 1} pixels
+     * centred on the origin. {@code square(1)} is the 3x3 neighbourhood used by
+     * {@link ImageTransformer#weather()}.
+     *
+     * @param radius the radius of the square, is not negative
+     * @return the square
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public static StructuringElement square(int radius) {
+        return rectangle(radius, radius);
+    }
+
+    /**
+     * Obtain the rectangle of {@code 2 * radiusX + 1} columns by {@code 2 * radiusY + 1}
+     * rows centred on the origin.
+     *
+     * @param radiusX the horizontal radius of the rectangle, is not negative
+     * @param radiusY the vertical radius of the rectangle, is not negative
+     * @return the rectangle
+     * @throws IllegalArgumentException if {@code radiusX} or {@code radiusY} is negative
+     */
+    public static StructuringElement rectangle(int radiusX, int radiusY) {
+        if (radiusX < 0 || radiusY < 0) {
+            throw new IllegalArgumentException("radius must not be negative");
+        }
+        int rows = 2 * radiusY + 1;
+        int[] runRows = new int[rows];
+        int[] runLows = new int[rows];
+        int[] runHighs = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            runRows[i] = i - radiusY;
+            runLows[i] = -radiusX;
+            runHighs[i] = radiusX;
+        }
+        return new StructuringElement(runRows, runLows, runHighs);
+    }
+
+    /**
+     * Obtain the disk of the offsets ({@code dx}, {@code dy}) with
+     * {@code dx * dx + dy * dy <= radius * radius}.
+     *
+     * @param radius the radius of the disk, is not negative
+     * @return the disk
+     * @throws IllegalArgumentException if {@code radius} is negative
+     */
+    public static StructuringElement disk(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("radius must not be negative");
+        }
+        int rows = 2 * radius + 1;
+        int[] runRows = new int[rows];
+        int[] runLows = new int[rows];
+        int[] runHighs = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            int dy = i - radius;
+            int dx = (int) Math.sqrt((double) radius * radius - (double) dy * dy);
+            while ((long) (dx + 1) * (dx + 1) + (long) dy * dy <= (long) radius * radius) {
+                dx++;
+            }
+            while ((long) dx * dx + (long) dy * dy > (long) radius * radius) {
+                dx--;
+            }
+            runRows[i] = dy;
+            runLows[i] = -dx;
+            runHighs[i] = dx;
+        }
+        return new StructuringElement(runRows, runLows, runHighs);
+    }
+
+    /**
+     * Obtain the structuring element given by a mask: the offset ({@code dx}, {@code dy})
+     * belongs to the element iff {@code mask[row + dy][col + dx]} is {@code true}.
+     *
+     * @param mask the element, one array per row, all rows of the same length
+     * @param col  the column of the origin in the mask
+     * @param row  the row of the origin in the mask
+     * @return the structuring element given by {@code mask}
+     * @throws IllegalArgumentException if {@code mask} is {@code null} or empty, if its rows
+     *                                  do not all have the same length, or if
+     *                                  {@code mask[row][col]} is not {@code true}
+     */
+    public static StructuringElement of(boolean[][] mask, int col, int row) {
+        if (mask == null || mask.length == 0 || mask[0] == null) {
+            throw new IllegalArgumentException("mask is null or empty");
+        }
+        int width = mask[0].length;
+        for (boolean[] maskRow : mask) {
+            if (maskRow == null || maskRow.length != width) {
+                throw new IllegalArgumentException("mask rows must all have the same length");
+            }
+        }
+        if (row < 0 || row >= mask.length || col < 0 || col >= width || !mask[row][col]) {
+            throw new IllegalArgumentException("the origin must belong to the mask");
+        }
+        List<int[]> runs = new ArrayList<>();
+        for (int i = 0; i < mask.length; i++) {
+            int j = 0;
+            while (j < width) {
+                if (!mask[i][j]) {
+                    j++;
+                    continue;
+                }
+                int start = j;
+                while (j < width && mask[i][j]) {
+                    j++;
+                }
+                runs.add(new int[] {i - row, start - col, j - 1 - col});
+            }
+        }
+        int[] runRows = new int[runs.size()];
+        int[] runLows = new int[runs.size()];
+        int[] runHighs = new int[runs.size()];
+        for (int i = 0; i < runs.size(); i++) {
+            runRows[i] = runs.get(i)[0];
+            runLows[i] = runs.get(i)[1];
+            runHighs[i] = runs.get(i)[2];
+        }
+        return new StructuringElement(runRows, runLows, runHighs);
+    }
+
+    /**
+     * Obtain the reflection of this element through its origin, with the
+     * offsets ({@code -dx}, {@code -dy}).
+     *
+     * @return the reflected element
+     */
+    public StructuringElement reflect() {
+        int n = runRows.length;
+        int[] reflectedRows = new int[n];
+        int[] reflectedLows = new int[n];
+        int[] reflectedHighs = new int[n];
+        for (int i = 0; i < n; i++) {
+            reflectedRows[i] = -runRows[n - 1 - i];
+            reflectedLows[i] = -runHighs[n - 1 - i];
+            reflectedHighs[i] = -runLows[n - 1 - i];
+        }
+        return new StructuringElement(reflectedRows, reflectedLows, reflectedHighs);
+    }
+
+    /**
+     * Checks if an offset belongs to this element.
+     *
+     * @param dx the number of columns to the right of the origin
+     * @param dy the number of rows below the origin
+     * @return true if ({@code dx}, {@code dy}) belongs to this element
+     */
+    public boolean contains(int dx, int dy) {
+        for (int i = 0; i < runRows.length; i++) {
+            if (runRows[i] == dy && runLows[i] <= dx && dx <= runHighs[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The number of horizontal runs of offsets in this element.
+     */
+    int runs() {
+        return runRows.length;
+    }
+
+    /**
+     * The row offset of run {@code i}.
+     */
+    int runRow(int i) {
+        return runRows[i];
+    }
+
+    /**
+     * The first column offset of run {@code i}.
+     */
+    int runLow(int i) {
+        return runLows[i];
+    }
+
+    /**
+     * The last column offset of run {@code i}.
+     */
+    int runHigh(int i) {
+        return runHighs[i];
+    }
+
+    /**
+     * The smallest row offset in this element.
+     */
+    int minRow() {
+        return runRows[0];
+    }
+
+    /**
+     * The largest row offset in this element.
+     */
+    int maxRow() {
+        return runRows[runRows.length - 1];
+    }
+
+    /**
+     * Checks if this element is a rectangle, which can be applied one
+     * dimension at a time.
+     */
+    boolean isRectangle() {
+        return rectangle;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof StructuringElement)) {
+            return false;
+        }
+        StructuringElement that = (StructuringElement) other;
+        return Arrays.equals(runRows, that.runRows) && Arrays.equals(runLows, that.runLows)
+            && Arrays.equals(runHighs, that.runHighs);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(runRows) + Arrays.hashCode(runLows)) + Arrays.hashCode(runHighs);
+    }
+}
@@ -0,0 +1,142 @@
+package ca.ubc.ece.cpen221.ip.mp;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the kernels in {@link PointKernels}, written with the
+ * incubating Vector API. This class must only be used when the
+ * {@code jdk.incubator.vector} module is enabled.
+ * <p>
+ * Each kernel handles a prefix of the row whose length is a multiple of the
+ * number of lanes and returns the length of that prefix; the caller handles
+ * the remaining pixels. The results are exactly those of the scalar kernels:
+ * in particular grayscale uses the same {@code double} arithmetic, in the same
+ * order, as {@link ca.ubc.ece.cpen221.ip.core.Image#toGray(int)}.
+ */
+final class VectorPointKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    // as many int lanes as there are double lanes, for the conversions in grayscale
+    private static final VectorSpecies<Integer> GRAY_INTS =
+        VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.length() * Integer.SIZE));
+
+    private static final int OPAQUE = 0xFF000000;
+    private static final int RED_AND_ALPHA = 0xFFFF0000;
+    private static final int RGB = 0x00FFFFFF;
+
+    private VectorPointKernels() {
+    }
+
+    /**
+     * Check that the kernels can run on this virtual machine.
+     *
+     * @return {@code true} if they can, {@code false} otherwise
+     */
+    static boolean isUsable() {
+        return INTS.length() > 1 && DOUBLES.length() > 1;
+    }
+
+    static int grayscale(int[] pixels, int length) {
+        int bound = GRAY_INTS.loopBound(length);
+        for (int i = 0; i < bound; i += GRAY_INTS.length()) {
+            IntVector pixel = IntVector.fromArray(GRAY_INTS, pixels, i);
+            IntVector r = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+            IntVector g = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+            IntVector b = pixel.and(0xFF);
+            DoubleVector y = toDoubles(r).mul(0.299)
+                .add(toDoubles(g).mul(0.587))
+                .add(toDoubles(b).mul(0.114))
+                .add(0.5);
+            // all components are non-negative, so truncation rounds half up like Math.round
+            IntVector gray = (IntVector) y.convertShape(VectorOperators.D2I, GRAY_INTS, 0);
+            VectorMask<Integer> isGray = r.compare(VectorOperators.EQ, g).and(r.compare(VectorOperators.EQ, b));
+            gray = gray.blend(r, isGray);
+            gray.lanewise(VectorOperators.LSHL, 16)
+                .or(gray.lanewise(VectorOperators.LSHL, 8))
+                .or(gray)
+                .or(OPAQUE)
+                .intoArray(pixels, i);
+        }
+        return bound;
+    }
+
+    private static DoubleVector toDoubles(IntVector v) {
+        return (DoubleVector) v.convertShape(VectorOperators.I2D, DOUBLES, 0);
+    }
+
+    static int red(int[] pixels, int length) {
+        int bound = INTS.loopBound(length);
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, pixels, i).and(RED_AND_ALPHA).intoArray(pixels, i);
+        }
+        return bound;
+    }
+
+    static int negative(int[] pixels, int length) {
+        int bound = INTS.loopBound(length);
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector.fromArray(INTS, pixels, i).lanewise(VectorOperators.XOR, RGB).intoArray(pixels, i);
+        }
+        return bound;
+    }
+
+    static int posterize(int[] pixels, int length) {
+        int bound = INTS.loopBound(length);
+        for (int i = 0; i < bound; i += INTS.length()) {
+            IntVector pixel = IntVector.fromArray(INTS, pixels, i);
+            IntVector r = posterize(pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF));
+            IntVector g = posterize(pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF));
+            IntVector b = posterize(pixel.and(0xFF));
+            r.lanewise(VectorOperators.LSHL, 16)
+                .or(g.lanewise(VectorOperators.LSHL, 8))
+                .or(b)
+                .or(OPAQUE)
+                .intoArray(pixels, i);
+        }
+        return bound;
+    }
+
+    private static IntVector posterize(IntVector colour) {
+        return IntVector.broadcast(INTS, PointKernels.POSTER_129_255)
+            .blend(PointKernels.POSTER_65_128, colour.compare(VectorOperators.LE, PointKernels.POSTER_MID))
+            .blend(PointKernels.POSTER_0_64, colour.compare(VectorOperators.LE, PointKernels.POSTER_LOW));
+    }
+
+    /**
+     * Sets the bits of {@code mask} for the pixels of a prefix of the row that match
+     * {@code key}, as {@link ChromaKey} does, one lane mask at a time.
+     */
+    static int chromaKey(ChromaKey key, int[] pixels, int length, long[] mask, long index) {
+        int bound = INTS.loopBound(length);
+        int lanes = INTS.length();
+        for (int i = 0; i < bound; i += lanes) {
+            IntVector pixel = IntVector.fromArray(INTS, pixels, i);
+            IntVector r = pixel.lanewise(VectorOperators.LSHR, 16).and(0xFF).sub(key.red());
+            IntVector g = pixel.lanewise(VectorOperators.LSHR, 8).and(0xFF).sub(key.green());
+            IntVector b = pixel.and(0xFF).sub(key.blue());
+            IntVector distance;
+            if (key.isChroma()) {
+                IntVector cb = r.mul(ChromaKey.CB_RED).add(g.mul(ChromaKey.CB_GREEN)).add(b.mul(ChromaKey.CB_BLUE));
+                IntVector cr = r.mul(ChromaKey.CR_RED).add(g.mul(ChromaKey.CR_GREEN)).add(b.mul(ChromaKey.CR_BLUE));
+                distance = cb.mul(cb).add(cr.mul(cr));
+            } else {
+                distance = r.mul(r).add(g.mul(g)).add(b.mul(b));
+            }
+            long bits = distance.compare(VectorOperators.LE, key.limit()).toLong();
+            long bit = index + i;
+            int shift = (int) bit & (Long.SIZE - 1);
+            int word = (int) (bit >>> 6);
+            mask[word] |= bits << shift;
+            // lanes that go past the end of the word go to the start of the next one
+            if (shift + lanes > Long.SIZE) {
+                mask[word + 1] |= bits >>> (Long.SIZE - shift);
+            }
+        }
+        return bound;
+    }
+}
@@ -0,0 +1,241 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.Color;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ImageTests {
+
+    @Test
+    public void test_RegionRoundTrip() {
+        Image img = new Image("resources/15088.jpg");
+        int[] region = new int[2 + 3 * 10];
+        img.getRGB(5, 7, 8, 3, region, 2, 10);
+        assertEquals(img.getRGB(5, 7), region[2]);
+        assertEquals(img.getRGB(12, 9), region[2 + 2 * 10 + 7]);
+
+        Image copy = new Image(img.width(), img.height());
+        int[] all = new int[img.width() * img.height()];
+        img.getRGB(all, 0, img.width());
+        copy.setRGB(all, 0, img.width());
+        assertEquals(img, copy);
+    }
+
+    @Test
+    public void test_RectangleRegion() {
+        Image img = new Image(4, 3);
+        img.set(1, 2, new Color(10, 20, 30));
+        int[] region = new int[6];
+        img.getRGB(new Rectangle(1, 1, 3, 2), region, 0, 3);
+        assertEquals(new Color(10, 20, 30).getRGB(), region[3]);
+
+        img.setRGB(new Rectangle(0, 0, 2, 1), new int[]{1, 2, 3, 4, 5, 6}, 0, 3);
+        assertEquals(new Color(0, 0, 6).getRGB(), img.getRGB(2, 1));
+    }
+
+    @Test
+    public void test_RowLowerLeftOrigin() {
+        Image img = new Image(3, 2);
+        img.setOriginLowerLeft();
+        img.setRow(0, new int[]{0x010203, 0x040506, 0x070809}, 0);
+        img.setOriginUpperLeft();
+        int[] row = new int[3];
+        img.getRow(1, row, 0);
+        assertArrayEquals(new int[]{0xFF010203, 0xFF040506, 0xFF070809}, row);
+    }
+
+    @Test
+    public void test_RegionOutOfBounds() {
+        Image img = new Image(4, 4);
+        assertThrows(IllegalArgumentException.class, () -> img.getRGB(2, 0, 3, 1, new int[3], 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> img.getRGB(0, 0, 4, 2, new int[7], 0, 4));
+        assertThrows(IllegalArgumentException.class, () -> img.setRow(0, new int[4], 1));
+    }
+
+    @Test
+    public void test_ViewMatchesClip() {
+        Image img = new Image("resources/15088.jpg");
+        Image expectedImg = new Image("resources/tests/15088-clip-60-100-250-350.png");
+        Image view = img.view(new Rectangle(60, 100, 250, 350));
+        assertEquals(expectedImg, view);
+        assertEquals(expectedImg, new Image(view));
+    }
+
+    @Test
+    public void test_ViewIsLive() {
+        Image img = new Image(6, 5);
+        Image view = img.view(new Rectangle(2, 1, 4, 3));
+        view.set(0, 0, new Color(1, 2, 3));
+        assertEquals(new Color(1, 2, 3), img.get(2, 1));
+        img.set(4, 3, new Color(4, 5, 6));
+        assertEquals(new Color(4, 5, 6), view.get(2, 2));
+
+        Image inner = view.view(new Rectangle(1, 1, 2, 2));
+        inner.set(1, 1, new Color(7, 8, 9));
+        assertEquals(new Color(7, 8, 9), img.get(4, 3));
+    }
+
+    @Test
+    public void test_ViewLowerLeftOrigin() {
+        Image img = new Image(4, 4);
+        img.set(1, 3, new Color(9, 9, 9));
+        img.setOriginLowerLeft();
+        Image view = img.view(new Rectangle(1, 0, 2, 1));
+        assertEquals(new Color(9, 9, 9), view.get(0, 0));
+    }
+
+    @Test
+    public void test_Overlaps() {
+        Image img = new Image(6, 5);
+        Image left = img.view(new Rectangle(0, 0, 2, 4));
+        Image right = img.view(new Rectangle(3, 0, 5, 4));
+        Image middle = img.view(new Rectangle(2, 1, 3, 2));
+        assertTrue(img.overlaps(left));
+        assertTrue(left.overlaps(middle));
+        assertTrue(middle.overlaps(right));
+        assertFalse(left.overlaps(right));
+        assertFalse(img.overlaps(new Image(img)));
+        assertFalse(img.overlaps(new Image(6, 5)));
+    }
+
+    @Test
+    public void test_ViewOutOfBounds() {
+        Image img = new Image(4, 4);
+        assertThrows(IllegalArgumentException.class, () -> img.view(new Rectangle(2, 2, 4, 3)));
+    }
+
+    @Test
+    public void test_CopyIsIndependent() {
+        Image img = new Image(3, 3);
+        img.set(1, 1, new Color(10, 20, 30));
+        Image copy = new Image(img);
+        Image copyOfCopy = new Image(copy);
+        assertEquals(img, copy);
+
+        img.set(1, 1, new Color(40, 50, 60));
+        assertEquals(new Color(10, 20, 30), copy.get(1, 1));
+        copy.set(0, 0, new Color(1, 1, 1));
+        assertEquals(new Color(0, 0, 0), img.get(0, 0));
+        assertEquals(new Color(0, 0, 0), copyOfCopy.get(0, 0));
+        assertEquals(new Color(10, 20, 30), copyOfCopy.get(1, 1));
+
+        // unsharing duplicates the pixels without changing them
+        Image unshared = new Image(copyOfCopy);
+        long digest = copyOfCopy.digest();
+        unshared.ensureUnshared();
+        unshared.set(2, 2, new Color(7, 8, 9));
+        assertEquals(new Color(0, 0, 0), copyOfCopy.get(2, 2));
+        assertEquals(digest, copyOfCopy.digest());
+    }
+
+    @Test
+    public void test_ViewOfCopiedImage() {
+        Image img = new Image(4, 4);
+        Image view = img.view(new Rectangle(1, 1, 2, 2));
+        Image copy = new Image(img);
+        view.set(0, 0, new Color(5, 6, 7));
+        assertEquals(new Color(5, 6, 7), img.get(1, 1));
+        assertEquals(new Color(0, 0, 0), copy.get(1, 1));
+    }
+
+    @Test
+    public void test_MappedImage() {
+        Image img = new Image("resources/15088.jpg");
+        Image mapped = Image.mapped(img.width(), img.height());
+        int[] pixels = new int[img.width() * img.height()];
+        img.getRGB(pixels, 0, img.width());
+        mapped.setRGB(pixels, 0, img.width());
+        assertEquals(img, mapped);
+        assertEquals(img.view(new Rectangle(250, 250, 320, 480)),
+            mapped.view(new Rectangle(250, 250, 320, 480)));
+
+        Image copy = new Image(mapped);
+        mapped.set(300, 300, new Color(1, 2, 3));
+        assertEquals(img.get(300, 300), copy.get(300, 300));
+    }
+
+    @Test
+    public void test_MappedImageKeepsPixelsInFile() throws IOException {
+        File file = File.createTempFile("mapped", ".tiles");
+        file.deleteOnExit();
+        Image mapped = Image.mapped(600, 300, file);
+        assertEquals(new Color(0, 0, 0), mapped.get(599, 299));
+        mapped.set(599, 299, new Color(10, 20, 30));
+        assertEquals(new Color(10, 20, 30), Image.mapped(600, 300, file).get(599, 299));
+        assertThrows(IllegalArgumentException.class, () -> Image.mapped(300, 600, file));
+
+        File other = File.createTempFile("mapped", ".txt");
+        other.deleteOnExit();
+        Files.write(other.toPath(), new byte[1 << 20]);
+        assertThrows(IllegalArgumentException.class, () -> Image.mapped(10, 10, other));
+        assertEquals(1 << 20, other.length());
+    }
+
+    @Test
+    public void test_DecodeRegion() {
+        Image expectedImg = new Image("resources/tests/15088-clip-60-100-250-350.png");
+        Image clip = new Image("resources/15088.jpg",
+            DecodeOptions.FULL.withRegion(new Rectangle(60, 100, 250, 350)));
+        assertEquals(expectedImg, clip);
+    }
+
+    @Test
+    public void test_DecodeSubsampled() {
+        Image full = new Image(new File("resources/15088.jpg"));
+        Image sub = new Image(new File("resources/15088.jpg"), DecodeOptions.FULL.withSubsampling(3));
+        assertEquals((full.width() + 2) / 3, sub.width());
+        assertEquals((full.height() + 2) / 3, sub.height());
+        assertEquals(full.getRGB(33, 48), sub.getRGB(11, 16));
+    }
+
+    @Test
+    public void test_DecodeTargetSize() {
+        Image thumb = new Image("resources/15088.jpg", DecodeOptions.FULL.withTargetSize(40, 60));
+        assertEquals(40, thumb.width());
+        assertEquals(60, thumb.height());
+        assertThrows(IllegalArgumentException.class, () -> new Image("resources/15088.jpg",
+            DecodeOptions.FULL.withRegion(new Rectangle(0, 0, 321, 10))));
+    }
+
+    @Test
+    public void test_DigestFollowsChanges() {
+        Image img = new Image("resources/15088.jpg");
+        Image copy = new Image(img);
+        assertEquals(img.digest(), copy.digest());
+        assertEquals(img.hashCode(), copy.hashCode());
+
+        Image view = img.view(new Rectangle(10, 10, 19, 19));
+        long before = img.digest();
+        view.set(0, 0, new Color(1, 2, 3));
+        assertNotEquals(before, img.digest());
+        assertNotEquals(img, copy);
+
+        view.set(0, 0, copy.get(10, 10));
+        assertEquals(before, img.digest());
+        assertEquals(img, copy);
+    }
+
+    @Test
+    public void test_EqualsOrigin() {
+        Image img = new Image(2, 2);
+        img.set(0, 0, new Color(9, 9, 9));
+        Image flipped = new Image(img);
+        flipped.setOriginLowerLeft();
+        assertNotEquals(img, flipped);
+
+        Image other = new Image(2, 2);
+        other.set(0, 1, new Color(9, 9, 9));
+        assertEquals(other, flipped);
+        assertEquals(other.digest(), flipped.digest());
+    }
+}
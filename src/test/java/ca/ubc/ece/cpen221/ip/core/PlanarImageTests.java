@@ -0,0 +1,49 @@
+package ca.ubc.ece.cpen221.ip.core;
+
+import java.awt.Color;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PlanarImageTests {
+
+    @Test
+    public void test_RoundTrip() {
+        Image img = new Image("resources/15088.jpg");
+        PlanarImage planar = new PlanarImage(img);
+        assertEquals(img.width(), planar.width());
+        assertEquals(img.height(), planar.height());
+        assertEquals(img.get(17, 23), planar.get(17, 23));
+        assertEquals(img, planar.toImage());
+    }
+
+    @Test
+    public void test_Planes() {
+        PlanarImage planar = new PlanarImage(3, 2);
+        planar.set(2, 1, new Color(200, 100, 50));
+        assertEquals(200, planar.red()[5] & 0xFF);
+        assertEquals(100, planar.green()[5] & 0xFF);
+        assertEquals(50, planar.blue()[5] & 0xFF);
+
+        planar.blue()[0] = (byte) 255;
+        assertEquals(new Color(0, 0, 255), planar.toImage().get(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> planar.get(3, 0));
+    }
+
+    @Test
+    public void test_Rows() {
+        PlanarImage planar = new PlanarImage(3, 2);
+        int[] row = {0x123456, 0xFFABCDEF, 0x000001};
+        planar.setRow(1, row, 0);
+        int[] copy = new int[4];
+        planar.getRow(1, copy, 1);
+        assertEquals(new Color(0x12, 0x34, 0x56).getRGB(), copy[1]);
+        assertEquals(new Color(0xAB, 0xCD, 0xEF).getRGB(), copy[2]);
+        assertEquals(new Color(0, 0, 1).getRGB(), copy[3]);
+        assertThrows(IllegalArgumentException.class, () -> planar.getRow(2, copy, 0));
+        assertThrows(IllegalArgumentException.class, () -> planar.setRow(0, copy, 2));
+        assertThrows(IllegalArgumentException.class, () -> planar.setRow(0, null, 0));
+    }
+}
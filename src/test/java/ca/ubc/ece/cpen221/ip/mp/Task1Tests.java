@@ -1,6 +1,9 @@
 package ca.ubc.ece.cpen221.ip.mp;
 
+import ca.ubc.ece.cpen221.ip.core.GrayImage;
 import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.PlanarImage;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -8,6 +11,7 @@ import org.junit.jupiter.api.Test;
 import java.awt.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class Task1Tests {
@@ -71,4 +75,137 @@ public class Task1Tests {
         assertEquals(expectedImg, outputImage);
     }
 
+    @Test
+    public void test_NegativeOfView() {
+        Image originalImg = new Image("resources/15088.jpg");
+        Rectangle clip = new Rectangle(60, 100, 250, 350);
+        Image expectedImg = new ImageTransformer(originalImg).negative().view(clip);
+        Image outputImage = new ImageTransformer(originalImg.view(clip)).negative();
+        assertEquals(expectedImg, outputImage);
+    }
+
+
+    @Test
+    public void test_ToGrayMatchesGrayscale() {
+        Image originalImg = new Image("resources/15088.jpg");
+        ImageTransformer t = new ImageTransformer(originalImg);
+        GrayImage gray = t.toGray();
+        assertEquals(t.grayscale(), gray.toImage());
+        assertEquals(Image.toGray(originalImg.get(40, 60)).getRed(), gray.get(40, 60));
+    }
+
+    @Test
+    public void test_Threshold() {
+        Image originalImg = new Image(2, 1);
+        originalImg.set(0, 0, new Color(100, 100, 100));
+        originalImg.set(1, 0, new Color(200, 200, 200));
+        GrayImage expected = new GrayImage(2, 1);
+        expected.set(1, 0, 255);
+        ImageTransformer t = new ImageTransformer(originalImg);
+        assertEquals(expected, t.threshold(150));
+    }
+
+    @Test
+    public void test_GrayscaleMatchesToGray() {
+        Image originalImg = new Image(37, 5);
+        java.util.Random random = new java.util.Random(221);
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 37; col++) {
+                originalImg.setRGB(col, row, random.nextInt());
+            }
+        }
+        Image outputImg = new ImageTransformer(originalImg).grayscale();
+        for (int row = 0; row < 5; row++) {
+            for (int col = 0; col < 37; col++) {
+                assertEquals(Image.toGray(originalImg.getRGB(col, row)), outputImg.getRGB(col, row));
+            }
+        }
+    }
+
+    @Test
+    public void test_LutMatchesPointOperations() {
+        Image originalImg = new Image("resources/15088.jpg");
+        ImageTransformer t = new ImageTransformer(originalImg);
+        assertEquals(t.negative(), t.applyLut(ColourLut.NEGATIVE));
+        assertEquals(t.posterize(), t.applyLut(ColourLut.POSTERIZE));
+        assertEquals(t.red(), t.applyLut(ColourLut.RED));
+        assertEquals(originalImg, t.applyLut(ColourLut.NEGATIVE.andThen(ColourLut.NEGATIVE)));
+    }
+
+    @Test
+    public void test_LutOnPlanarImage() {
+        Image originalImg = new Image("resources/15088.jpg");
+        int w = originalImg.width();
+        int h = originalImg.height();
+        ImageTransformer t = new ImageTransformer(originalImg, 2);
+        assertEquals(t.posterize(), t.applyLut(ColourLut.POSTERIZE, new PlanarImage(w, h)).toImage());
+        assertEquals(t.negative(), t.applyLut(ColourLut.NEGATIVE, new PlanarImage(w, h)).toImage());
+
+        PlanarImage planar = new PlanarImage(originalImg);
+        ColourLut.RED.apply(planar);
+        assertEquals(t.red(), planar.toImage());
+        assertThrows(IllegalArgumentException.class, () -> t.applyLut(ColourLut.RED, new PlanarImage(w, h + 1)));
+        assertThrows(IllegalArgumentException.class, () -> t.applyLut(null, new PlanarImage(w, h)));
+    }
+
+    @Test
+    public void test_LutComposition() {
+        ColourLut lut = ColourLut.levels(20, 200).andThen(ColourLut.gamma(2.2)).andThen(ColourLut.NEGATIVE);
+        int rgb = new Color(10, 110, 250).getRGB();
+        int expected = ColourLut.NEGATIVE.apply(ColourLut.gamma(2.2).apply(ColourLut.levels(20, 200).apply(rgb)));
+        assertEquals(expected, lut.apply(rgb));
+        assertEquals(ColourLut.IDENTITY, ColourLut.gamma(1));
+        assertThrows(IllegalArgumentException.class, () -> ColourLut.of(new int[256], new int[256], new int[255]));
+        assertThrows(IllegalArgumentException.class, () -> ColourLut.curve(c -> c + 1));
+    }
+
+    @Test
+    public void test_PointOperationsIntoDestination() {
+        Image originalImg = new Image("resources/15088.jpg");
+        ImageTransformer t = new ImageTransformer(originalImg, 2);
+        Image expectedImg = t.posterize();
+        Image destination = new Image(originalImg.width(), originalImg.height());
+        assertSame(destination, t.posterize(destination));
+        assertEquals(expectedImg, destination);
+
+        // point operations may run in place
+        Image copy = new Image(originalImg);
+        ImageTransformer inPlace = new ImageTransformer(copy, 2);
+        assertSame(copy, inPlace.mirror(copy));
+        assertSame(copy, inPlace.applyLut(ColourLut.NEGATIVE, copy));
+        assertEquals(t.pipeline().mirror().negative().toImage(), copy);
+        assertEquals(new Image("resources/15088.jpg"), originalImg);
+
+        Image view = originalImg.view(new Rectangle(0, 0, 10, 10));
+        assertThrows(IllegalArgumentException.class, () -> t.grayscale(new Image(2, 2)));
+        Image overlapping = originalImg.view(new Rectangle(5, 5, 15, 15));
+        assertThrows(IllegalArgumentException.class, () -> new ImageTransformer(view).red(overlapping));
+    }
+
+    @Test
+    public void test_FlipsAndRotations() {
+        Image originalImg = new Image(70, 3);
+        for (int i = 0; i < 70; i++) {
+            for (int j = 0; j < 3; j++) {
+                originalImg.set(i, j, new Color(i, j, 7));
+            }
+        }
+        ImageTransformer t = new ImageTransformer(originalImg);
+        assertEquals(new Color(5, 2, 7), t.flipVertical().get(5, 0));
+        assertEquals(new Color(64, 2, 7), t.rotate180().get(5, 0));
+
+        Image transposedImg = t.transpose();
+        assertEquals(3, transposedImg.width());
+        assertEquals(70, transposedImg.height());
+        assertEquals(new Color(65, 1, 7), transposedImg.get(1, 65));
+        // clockwise, the top row becomes the right column
+        assertEquals(new Color(65, 0, 7), t.rotate90().get(2, 65));
+        assertEquals(new Color(65, 0, 7), t.rotate270().get(0, 4));
+
+        ImageTransformer rotated = new ImageTransformer(t.rotate90(), 2);
+        assertEquals(originalImg, rotated.rotate270());
+        assertEquals(t.rotate180(), rotated.rotate90());
+        assertEquals(t.mirror(), new ImageTransformer(t.flipVertical()).rotate180());
+        assertThrows(IllegalArgumentException.class, () -> t.transpose(new Image(70, 3)));
+    }
 }
@@ -1,6 +1,7 @@
 package ca.ubc.ece.cpen221.ip.mp;
 
 import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
 
 import org.junit.jupiter.api.Test;
 
@@ -87,4 +88,215 @@ public class Task2Tests {
         assertThrows(IllegalArgumentException.class, () -> t.blockPaint(3));
     }
 
+    @Test
+    public void test_WeatheringMapped() {
+        Image originalImg = new Image("resources/95006.jpg");
+        Image mappedImg = Image.mapped(originalImg.width(), originalImg.height());
+        int[] pixels = new int[originalImg.width() * originalImg.height()];
+        originalImg.getRGB(pixels, 0, originalImg.width());
+        mappedImg.setRGB(pixels, 0, originalImg.width());
+        Image expectedImg = new Image("resources/tests/95006-weathered.png");
+        ImageTransformer t = new ImageTransformer(mappedImg);
+        Image outputImage = t.weather();
+        assertEquals(expectedImg, outputImage);
+    }
+
+    @Test
+    public void test_WeatheringParallel() {
+        Image originalImg = new Image("resources/95006.jpg");
+        Image expectedImg = new Image("resources/tests/95006-weathered.png");
+        ImageTransformer t = new ImageTransformer(originalImg, 4);
+        Image outputImage = t.weather();
+        assertEquals(expectedImg, outputImage);
+    }
+
+    @Test
+    public void test_blockPaintingParallel() {
+        Image originalImg = new Image("resources/216053.jpg");
+        Image expectedImg = new Image("resources/tests/216053-seurat-3x3.png");
+        ImageTransformer t = new ImageTransformer(originalImg, 4);
+        Image outputImg = t.blockPaint(3);
+        assertEquals(expectedImg, outputImg);
+    }
+
+    @Test
+    public void test_blockPaintingWithTable() {
+        Image originalImg = new Image("resources/216053.jpg");
+        Image expectedImg = new Image("resources/tests/216053-seurat-3x3.png");
+        ImageTransformer t = new ImageTransformer(originalImg, 2);
+        assertEquals(expectedImg, t.blockPaint(3));
+        // the table is used once it has been built
+        t.integralImage();
+        assertEquals(expectedImg, t.blockPaint(3));
+    }
+
+    @Test
+    public void test_ZeroParallelism() {
+        Image originalImg = new Image(2, 2);
+        assertThrows(IllegalArgumentException.class, () -> new ImageTransformer(originalImg, 0));
+    }
+
+    @Test
+    public void test_PipelineMatchesChain() {
+        Image originalImg = new Image("resources/95006.jpg");
+        Image grayImg = new ImageTransformer(originalImg).grayscale();
+        Image denoisedImg = new ImageTransformer(grayImg).denoise();
+        Image weatheredImg = new ImageTransformer(denoisedImg).weather();
+        Image expectedImg = new ImageTransformer(weatheredImg).posterize();
+        Image outputImg = new ImageTransformer(originalImg).pipeline()
+            .grayscale().denoise().weather().posterize().toImage();
+        assertEquals(expectedImg, outputImg);
+    }
+
+    @Test
+    public void test_PipelineParallel() {
+        Image originalImg = new Image("resources/95006.jpg");
+        Image expectedImg = new Image("resources/tests/95006-seurat-4x4.png");
+        Image outputImg = new ImageTransformer(originalImg, 4).pipeline()
+            .negative().negative().blockPaint(4).toImage();
+        assertEquals(expectedImg, outputImg);
+        assertEquals(originalImg, new ImageTransformer(originalImg).pipeline().toImage());
+    }
+
+    @Test
+    public void test_denoiseRadius() {
+        Image originalImg = new Image(6, 5);
+        for (int i = 0; i < 6; i++) {
+            for (int j = 0; j < 5; j++) {
+                originalImg.set(i, j, new Color(10 * i + j, 40 - 7 * j, (i * j * 13) % 256));
+            }
+        }
+        ImageTransformer t = new ImageTransformer(originalImg);
+        Image outputImg = t.denoise(2);
+        // the window of the corner (0, 0) is 3 by 3: the reds are 0, 1, 2, 10, 11, 12, 20, 21, 22
+        assertEquals(11, outputImg.get(0, 0).getRed());
+        // the window of (2, 0) is 5 by 3: the median of the 15 greens is 33
+        assertEquals(33, outputImg.get(2, 0).getGreen());
+        // the window of (1, 1) is 4 by 4, so the two middle reds are averaged: (13 + 20) / 2
+        assertEquals(16, outputImg.get(1, 1).getRed());
+        assertEquals(t.denoise(), t.denoise(1));
+        assertThrows(IllegalArgumentException.class, () -> t.denoise(0));
+    }
+
+    @Test
+    public void test_ErodeDilate() {
+        Image originalImg = new Image(5, 4);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 4; j++) {
+                originalImg.set(i, j, new Color(10 * i + j, 100, 200));
+            }
+        }
+        originalImg.set(2, 1, new Color(255, 0, 200));
+        ImageTransformer t = new ImageTransformer(originalImg);
+        assertEquals(t.weather(), t.erode(StructuringElement.square(1)));
+
+        // a horizontal line of three pixels: (2, 1) sees columns 1 to 3 of row 1
+        StructuringElement line = StructuringElement.rectangle(1, 0);
+        assertEquals(11, t.erode(line).get(2, 1).getRed());
+        assertEquals(255, t.dilate(line).get(3, 1).getRed());
+        assertEquals(0, t.erode(line).get(1, 1).getGreen());
+
+        // an element to the right of its origin is reflected to the left by dilate
+        boolean[][] mask = {{true, true}};
+        StructuringElement right = StructuringElement.of(mask, 0, 0);
+        assertEquals(right.reflect(), StructuringElement.of(mask, 1, 0));
+        assertEquals(30, t.erode(right).get(3, 0).getRed());
+        assertEquals(30, t.dilate(right).get(3, 0).getRed());
+        assertEquals(new Color(40, 100, 200), t.erode(right).get(4, 0));
+
+        // the bright red pixel is smaller than the square, so opening removes it and closing keeps it
+        assertEquals(new Color(22, 0, 200), t.open(StructuringElement.square(1)).get(2, 1));
+        assertEquals(new Color(255, 100, 200), t.close(StructuringElement.square(1)).get(2, 1));
+        assertEquals(new Color(11, 0, 0), t.morphologicalGradient(StructuringElement.square(1)).get(4, 3));
+        assertEquals(t.erode(StructuringElement.disk(2)),
+            new ImageTransformer(originalImg, 3).erode(StructuringElement.disk(2)));
+
+        assertThrows(IllegalArgumentException.class, () -> StructuringElement.square(-1));
+        assertThrows(IllegalArgumentException.class, () -> StructuringElement.of(new boolean[][] {{false, true}}, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> t.dilate(null));
+    }
+
+    @Test
+    public void test_IntegralImage() {
+        Image originalImg = new Image(5, 3);
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 3; j++) {
+                originalImg.set(i, j, new Color(10 * i + j, 3 * i, 100));
+            }
+        }
+        ImageTransformer t = new ImageTransformer(originalImg);
+        IntegralImage table = t.integralImage();
+        assertEquals(10 + 11 + 20 + 21, table.sum(new Rectangle(1, 0, 2, 1), IntegralImage.RED));
+        assertEquals(new Color(21, 6, 100), table.mean(new Rectangle(0, 0, 4, 2)));
+
+        // the window of (0, 0) is 2 by 2 and the window of (2, 1) is 3 by 3
+        Image blurredImg = t.boxBlur(1);
+        assertEquals(new Color(5, 1, 100), blurredImg.get(0, 0));
+        assertEquals(new Color(21, 6, 100), blurredImg.get(2, 1));
+        assertEquals(originalImg, t.boxBlur(0));
+
+        // 5 by 3 pixels in blocks of 2 give 3 by 2 pixels, with smaller blocks on the edges
+        Image smallImg = t.downscale(2);
+        assertEquals(3, smallImg.width());
+        assertEquals(2, smallImg.height());
+        assertEquals(new Color(5, 1, 100), smallImg.get(0, 0));
+        assertEquals(new Color(42, 12, 100), smallImg.get(2, 1));
+
+        // the table follows changes to the image
+        originalImg.set(0, 0, new Color(40, 0, 100));
+        assertEquals(originalImg, t.boxBlur(0));
+        assertThrows(IllegalArgumentException.class, () -> t.downscale(0));
+    }
+
+    @Test
+    public void test_NeighbourhoodIntoDestination() {
+        Image originalImg = new Image("resources/95006.jpg");
+        ImageTransformer t = new ImageTransformer(originalImg, 3);
+        Image destination = new Image(originalImg.width(), originalImg.height());
+        assertEquals(t.denoise(), t.denoise(destination));
+        assertEquals(t.weather(), t.weather(destination));
+        assertEquals(t.blockPaint(5), t.blockPaint(5, destination));
+        assertEquals(t.erode(StructuringElement.disk(3)), t.erode(StructuringElement.disk(3), destination));
+
+        // neighbourhood operations read rows around the row they write
+        assertThrows(IllegalArgumentException.class, () -> t.denoise(originalImg));
+        assertThrows(IllegalArgumentException.class, () -> t.blockPaint(5, originalImg));
+        Image expectedImg = t.boxBlur(2);
+        assertEquals(expectedImg, t.boxBlur(2, originalImg));
+    }
+
+    @Test
+    public void test_Convolve() {
+        Image originalImg = new Image(4, 1);
+        for (int col = 0; col < 4; col++) {
+            originalImg.set(col, 0, new Color(40 * col, 100, 0));
+        }
+        ImageTransformer t = new ImageTransformer(originalImg);
+
+        // column 0 averages column 2 and the column two to the left of it, outside the image
+        ConvolutionKernel kernel = ConvolutionKernel.of(new double[][]{{0.5, 0, 0, 0, 0.5}});
+        assertEquals(new Color(40, 100, 0), t.convolve(kernel, BorderPolicy.CLAMP).get(0, 0));
+        assertEquals(new Color(60, 100, 0), t.convolve(kernel, BorderPolicy.REFLECT).get(0, 0));
+        assertEquals(new Color(80, 100, 0), t.convolve(kernel, BorderPolicy.WRAP).get(0, 0));
+        assertEquals(new Color(40, 50, 0), t.convolve(kernel, BorderPolicy.ZERO).get(0, 0));
+
+        Image photoImg = new Image("resources/95006.jpg");
+        ImageTransformer photo = new ImageTransformer(photoImg, 3);
+        assertEquals(photoImg, photo.convolve(ConvolutionKernel.of(new double[][]{{1}}), BorderPolicy.ZERO));
+        assertEquals(photo.gaussianBlur(1.5), photo.pipeline().gaussianBlur(1.5).toImage());
+        assertEquals(photo.sharpen(1, 0.5), photo.pipeline().sharpen(1, 0.5).toImage());
+
+        // a kernel whose weights add up to 1 keeps an image of one colour
+        Image flatImg = new Image(9, 7);
+        for (int row = 0; row < 7; row++) {
+            for (int col = 0; col < 9; col++) {
+                flatImg.set(col, row, new Color(200, 13, 77));
+            }
+        }
+        assertEquals(flatImg, new ImageTransformer(flatImg).gaussianBlur(2));
+        assertEquals(flatImg, new ImageTransformer(flatImg).sharpen(2, 3));
+
+        assertThrows(IllegalArgumentException.class, () -> ConvolutionKernel.of(new double[][]{{1, 1}}));
+        assertThrows(IllegalArgumentException.class, () -> t.convolve(kernel, BorderPolicy.CLAMP, originalImg));
+    }
 }
@@ -1,11 +1,18 @@
 package ca.ubc.ece.cpen221.ip.mp;
 
 import ca.ubc.ece.cpen221.ip.core.Image;
+import ca.ubc.ece.cpen221.ip.core.Rectangle;
 import java.awt.Color;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class Task4Tests {
 
@@ -75,4 +82,186 @@ public class Task4Tests {
         assertEquals(expectedImg, outputImg);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void test_GreenScreenDiagonalsAndTies() {
+        Color green = new Color(0, 255, 0);
+        Color black = new Color(0, 0, 0);
+        Color white = new Color(255, 255, 255);
+        Image tile = new Image(1, 1);
+        tile.set(0, 0, white);
+
+        // a diagonal line and a row of the same size: the diagonal starts first
+        Image originalImg = new Image(40, 3);
+        for (int i = 0; i < 3; i++) {
+            originalImg.set(i, i, green);
+            originalImg.set(30 + i, 2, green);
+        }
+        Image outputImg = new ImageTransformer(originalImg).greenScreen(green, tile);
+        assertEquals(white, outputImg.get(1, 1));
+        assertEquals(black, outputImg.get(1, 0));
+        assertEquals(green, outputImg.get(31, 2));
+
+        // a region that crosses rows and words of the mask through a diagonal
+        Image wideImg = new Image(130, 3);
+        for (int col = 50; col < 130; col++) {
+            wideImg.set(col, 0, green);
+        }
+        wideImg.set(49, 1, green);
+        wideImg.set(0, 2, green);
+        wideImg.set(48, 2, green);
+        outputImg = new ImageTransformer(wideImg).greenScreen(green, tile);
+        assertEquals(white, outputImg.get(129, 0));
+        assertEquals(white, outputImg.get(48, 2));
+        assertEquals(green, outputImg.get(0, 2));
+    }
+
+    @Test
+    public void test_ConnectedComponents() {
+        Color green = new Color(0, 255, 0);
+        Image originalImg = new Image(10, 150);
+        // a V across the boundary between the first two bands of rows, joined at its bottom
+        for (int row = 40; row < 100; row++) {
+            originalImg.set(2, row, green);
+            originalImg.set(7, row, green);
+        }
+        for (int col = 3; col < 7; col++) {
+            originalImg.set(col, 100, green);
+        }
+        originalImg.set(5, 0, green);
+        originalImg.set(0, 149, green);
+        originalImg.set(1, 148, green);
+
+        ConnectedComponents components = new ImageTransformer(originalImg, 2).connectedComponents(green);
+        assertEquals(3, components.count());
+        assertEquals(1, components.label(5, 0));
+        assertEquals(2, components.label(2, 40));
+        assertEquals(2, components.label(7, 99));
+        assertEquals(3, components.label(0, 149));
+        assertEquals(0, components.label(5, 50));
+        assertEquals(2, components.largest());
+        assertEquals(124, components.area(2));
+        Rectangle bounds = components.bounds(2);
+        assertEquals(2, bounds.xTopLeft);
+        assertEquals(40, bounds.yTopLeft);
+        assertEquals(7, bounds.xBottomRight);
+        assertEquals(100, bounds.yBottomRight);
+        assertEquals(0.5, components.centroid(3).x, 1e-9);
+        assertEquals(148.5, components.centroid(3).y, 1e-9);
+        assertEquals(components.labels()[149 * 10], components.label(0, 149));
+        assertThrows(IllegalArgumentException.class, () -> components.area(4));
+    }
+
+    @Test
+    public void test_ChromaKey() {
+        Color green = new Color(0, 200, 0);
+        ChromaKey exact = ChromaKey.rgb(green, 0);
+        assertTrue(exact.matches(green));
+        assertFalse(exact.matches(new Color(0, 201, 0)));
+
+        ChromaKey near = ChromaKey.rgb(green, 5);
+        assertTrue(near.matches(new Color(3, 196, 0)));
+        assertFalse(near.matches(new Color(4, 196, 0)));
+
+        // adding the same amount to every component changes the brightness but not the chroma
+        ChromaKey chroma = ChromaKey.ycbcr(green, 8);
+        assertTrue(chroma.matches(new Color(40, 240, 40)));
+        assertFalse(near.matches(new Color(40, 240, 40)));
+        assertFalse(chroma.matches(new Color(120, 120, 120)));
+        assertThrows(IllegalArgumentException.class, () -> ChromaKey.rgb(green, -1));
+
+        // uneven footage: every pixel of the 70 by 5 screen is a slightly different green
+        Image originalImg = new Image(70, 7);
+        for (int row = 1; row < 6; row++) {
+            for (int col = 0; col < 70; col++) {
+                int light = (col + row) % 10;
+                originalImg.set(col, row, new Color(light, 190 + light, light + col % 2));
+            }
+        }
+        Image tile = new Image(1, 1);
+        tile.set(0, 0, Color.WHITE);
+        ImageTransformer t = new ImageTransformer(originalImg, 2);
+        assertEquals(350, t.connectedComponents(chroma).area(1));
+        Image outputImg = t.greenScreen(chroma, tile);
+        assertEquals(Color.WHITE, outputImg.get(69, 5));
+        assertEquals(Color.BLACK, outputImg.get(69, 6));
+        assertEquals(originalImg.get(69, 5), t.greenScreen(green, tile).get(69, 5));
+    }
+
+    @Test
+    public void test_Compositor() {
+        Color green = new Color(0, 255, 0);
+        Image originalImg = new Image(4, 4);
+        for (int row = 0; row < 4; row++) {
+            for (int col = 0; col < 4; col++) {
+                originalImg.set(col, row, green);
+            }
+        }
+        Image backgroundImg = new Image(2, 2);
+        backgroundImg.set(0, 0, Color.RED);
+        backgroundImg.set(1, 0, Color.BLUE);
+        backgroundImg.set(0, 1, Color.WHITE);
+        backgroundImg.set(1, 1, Color.YELLOW);
+        ImageTransformer t = new ImageTransformer(originalImg, 2);
+        ChromaKey key = ChromaKey.rgb(green, 0);
+
+        Image scaledImg = t.greenScreen(key, Compositor.scale(backgroundImg));
+        assertEquals(Color.RED, scaledImg.get(1, 1));
+        assertEquals(Color.BLUE, scaledImg.get(2, 0));
+        assertEquals(Color.YELLOW, scaledImg.get(3, 3));
+        Image tiledImg = t.greenScreen(key, Compositor.tile(backgroundImg));
+        assertEquals(Color.YELLOW, tiledImg.get(1, 1));
+        assertEquals(t.greenScreen(green, backgroundImg), tiledImg);
+
+        // the screen pixel on the edge keeps a third of its own colour
+        Image edgeImg = new Image(3, 1);
+        edgeImg.set(0, 0, green);
+        edgeImg.set(1, 0, green);
+        Image whiteImg = new Image(1, 1);
+        whiteImg.set(0, 0, Color.WHITE);
+        Compositor soft = Compositor.tile(whiteImg).withSoftEdge(1);
+        Image softImg = new ImageTransformer(edgeImg).greenScreen(key, soft);
+        assertEquals(Color.WHITE, softImg.get(0, 0));
+        assertEquals(new Color(170, 255, 170), softImg.get(1, 0));
+        assertEquals(Color.BLACK, softImg.get(2, 0));
+        assertThrows(IllegalArgumentException.class, () -> soft.withSoftEdge(-1));
+    }
+
+    @Test
+    public void test_GreenScreenSequence() {
+        Color green = new Color(0, 255, 0);
+        Image frameImg = new Image(20, 150);
+        for (int row = 10; row < 140; row++) {
+            for (int col = 2; col < 18; col++) {
+                frameImg.set(col, row, green);
+            }
+        }
+        Image backgroundImg = new Image(3, 2);
+        backgroundImg.set(1, 0, Color.RED);
+        backgroundImg.set(2, 1, Color.BLUE);
+        ChromaKey key = ChromaKey.rgb(green, 0);
+        Compositor soft = Compositor.tile(backgroundImg).withSoftEdge(2);
+        GreenScreenSequence sequence = new GreenScreenSequence(key, soft, 2);
+
+        // an actor walks across the second band of rows; the screen keeps its rectangle
+        Image movedImg = new Image(frameImg);
+        for (int row = 70; row < 80; row++) {
+            movedImg.set(8, row, Color.WHITE);
+        }
+        // then the screen shrinks, and then a frame of another size starts again
+        Image shrunkImg = new Image(movedImg);
+        for (int col = 2; col < 18; col++) {
+            shrunkImg.set(col, 139, Color.BLACK);
+        }
+        Image smallImg = new Image(5, 5);
+        smallImg.set(2, 2, green);
+        Image[] frames = {frameImg, frameImg, movedImg, shrunkImg, smallImg, movedImg};
+        for (Image frame : frames) {
+            assertEquals(new ImageTransformer(frame).greenScreen(key, soft), sequence.next(frame));
+        }
+        assertEquals(Color.BLACK, sequence.next(smallImg).get(0, 0));
+        List<Image> outputImgs = new GreenScreenSequence(key, soft).process(Stream.of(frameImg, movedImg))
+            .collect(Collectors.toList());
+        assertEquals(new ImageTransformer(movedImg).greenScreen(key, soft), outputImgs.get(1));
+        assertThrows(IllegalArgumentException.class, () -> sequence.next(null));
+    }
+}